@@ -74,6 +74,11 @@ public class AppConfig {
      */
     public static final String CONTENT_URL = API_PREFIX + "/content";
 
+    /**
+     * 内容增量更新
+     */
+    public static final String CONTENT_PATCH_URL = API_PREFIX + "/content/patch";
+
     /**
      * 云端文件检查
      */
@@ -0,0 +1,47 @@
+package com.lfs.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 待同步到云端的文档写入 (写入日志中的一条记录)
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder(toBuilder = true)
+public class PendingContentWrite implements Serializable {
+    /**
+     * 文档id
+     */
+    private Long id;
+
+    /**
+     * 目录id
+     */
+    private Long dirId;
+
+    /**
+     * 文档标题
+     */
+    private String title;
+
+    /**
+     * 文档类型
+     */
+    private String type;
+
+    /**
+     * 文档内容
+     */
+    private String content;
+
+    /**
+     * 本地保存时间 (毫秒)
+     */
+    private long savedAt;
+}
@@ -0,0 +1,42 @@
+package com.lfs.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 增量更新文档内容的请求
+ * 后端用 baseHash 校验自己保存的版本，一致时按顺序应用 hunks，不一致时返回 409
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ContentPatchRequest {
+    private Long id;
+    private Long dirId;
+    private String title;
+    private String type;
+    /**
+     * 基准版本 (上次同步成功的内容) 的 SHA-256
+     */
+    private String baseHash;
+    /**
+     * 应用补丁后内容的 SHA-256，供后端校验结果
+     */
+    private String targetHash;
+    private List<Hunk> hunks;
+
+    /**
+     * 一处连续修改：从基准版本第 start 行 (从0开始) 起删除 deleteCount 行，再插入 text
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Hunk {
+        private int start;
+        private int deleteCount;
+        private String text;
+    }
+}
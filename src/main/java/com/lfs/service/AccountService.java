@@ -29,7 +29,7 @@ public class AccountService {
             // 假设后端接口为 /account/key-package?username=xxx
             String url = AppConfig.BASE_URL + AppConfig.API_PREFIX + "/account/key-package?username=" + username;
 
-            HttpResponse response = HttpClientService.createGetRequest(url, false).execute();
+            HttpResponse response = HttpClientService.execute(HttpClientService.createGetRequest(url, false));
 
             String responseBody = response.body();
             return JSON.parseObject(responseBody, new TypeReference<BackendResponse<KeyPackageResponse>>() {});
@@ -59,11 +59,10 @@ public class AccountService {
             user.setNickname(username);
             user.setCaptcha(captcha);
 
-            HttpResponse response = HttpClientService.createPostRequest(AppConfig.BASE_URL + AppConfig.REGISTER_URL, false)
+            HttpResponse response = HttpClientService.execute(HttpClientService.createPostRequest(AppConfig.BASE_URL + AppConfig.REGISTER_URL, false)
                     .cookie("captchaCode=" + captchaId)
                     .body(JSON.toJSONString(user))
-                    .contentType("application/json")
-                    .execute();
+                    .contentType("application/json"));
 
             String responseBody = response.body();
             return JSON.parseObject(responseBody, new TypeReference<>() {
@@ -91,11 +90,10 @@ public class AccountService {
             loginRequest.setNonce(UUID.randomUUID().toString()); // 生成随机 nonce
             loginRequest.setTimestamp(String.valueOf(System.currentTimeMillis())); // 获取当前时间戳
 
-            HttpResponse response = HttpClientService.createPostRequest(AppConfig.BASE_URL + AppConfig.LOGIN_URL, false)
+            HttpResponse response = HttpClientService.execute(HttpClientService.createPostRequest(AppConfig.BASE_URL + AppConfig.LOGIN_URL, false)
                     .cookie("captchaCode=" + captchaId)
                     .body(JSON.toJSONString(loginRequest))
-                    .contentType("application/json")
-                    .execute();
+                    .contentType("application/json"));
 
             String responseBody = response.body();
             return JSON.parseObject(responseBody, new TypeReference<BackendResponse<String>>() {});
@@ -121,10 +119,9 @@ public class AccountService {
             request.setOldPassword(DigestUtil.sha256Hex(oldPassword));
             request.setNewPassword(DigestUtil.sha256Hex(newPassword));
 
-            HttpResponse response = HttpClientService.createPostRequest(AppConfig.BASE_URL + AppConfig.CHANGE_PASSWORD_URL, true)
+            HttpResponse response = HttpClientService.execute(HttpClientService.createPostRequest(AppConfig.BASE_URL + AppConfig.CHANGE_PASSWORD_URL, true)
                     .body(JSON.toJSONString(request))
-                    .contentType("application/json")
-                    .execute();
+                    .contentType("application/json"));
 
             String responseBody = response.body();
             return JSON.parseObject(responseBody, new TypeReference<BackendResponse<Object>>() {});
@@ -140,7 +137,7 @@ public class AccountService {
 
     public CaptchaResponse getCaptcha() {
         try {
-            HttpResponse response = HttpClientService.createGetRequest(AppConfig.BASE_URL + AppConfig.CAPTCHA_URL, false).execute();
+            HttpResponse response = HttpClientService.execute(HttpClientService.createGetRequest(AppConfig.BASE_URL + AppConfig.CAPTCHA_URL, false));
             byte[] imageData = response.bodyBytes();
 
             // 从Cookie中获取captchaId
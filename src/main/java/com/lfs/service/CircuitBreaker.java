@@ -0,0 +1,130 @@
+package com.lfs.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 熔断器
+ * 连续失败达到阈值后进入 OPEN 状态，在冷却时间内所有请求直接失败而不再等待超时；
+ * 冷却结束后进入 HALF_OPEN 状态，只放行一个试探请求，成功则恢复 CLOSED，失败则重新 OPEN
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        /**
+         * 正常放行
+         */
+        CLOSED,
+        /**
+         * 快速失败
+         */
+        OPEN,
+        /**
+         * 试探中
+         */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationMs;
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+    private boolean trialInFlight = false;
+
+    /**
+     * @param failureThreshold 触发熔断的连续失败次数
+     * @param openDurationMs   熔断后的冷却时间 (毫秒)
+     */
+    public CircuitBreaker(int failureThreshold, long openDurationMs) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDurationMs;
+    }
+
+    /**
+     * 判断当前是否允许发出请求
+     * @return 允许时返回 true；返回 true 后必须调用 recordSuccess 或 recordFailure
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                    return false;
+                }
+                transitionTo(State.HALF_OPEN);
+                trialInFlight = true;
+                return true;
+            default:
+                // HALF_OPEN 下只允许一个试探请求在途
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        if (state != State.CLOSED) {
+            transitionTo(State.CLOSED);
+        }
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            openedAt = System.currentTimeMillis();
+            transitionTo(State.OPEN);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 距离下一次允许试探还有多久
+     * @return 毫秒数，非 OPEN 状态时为 0
+     */
+    public synchronized long getRetryAfterMs() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, openDurationMs - (System.currentTimeMillis() - openedAt));
+    }
+
+    /**
+     * 注册状态变化监听器，回调在 EDT 上执行
+     */
+    public void addStateListener(StateListener listener) {
+        listeners.add(listener);
+    }
+
+    private void transitionTo(State newState) {
+        log.info("熔断器状态变化: {} -> {}", state, newState);
+        state = newState;
+        SwingUtilities.invokeLater(() -> {
+            for (StateListener listener : listeners) {
+                listener.onStateChanged(newState);
+            }
+        });
+    }
+
+    /**
+     * 熔断器状态监听器接口
+     */
+    public interface StateListener {
+        void onStateChanged(State state);
+    }
+}
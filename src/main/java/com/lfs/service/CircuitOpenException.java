@@ -0,0 +1,14 @@
+package com.lfs.service;
+
+import cn.hutool.core.io.IORuntimeException;
+
+/**
+ * 熔断异常
+ * 熔断器处于打开状态时请求不会发出，直接抛出此异常。
+ * 继承 IORuntimeException，使已有的离线回退和后台重试逻辑把它当作网络故障处理
+ */
+public class CircuitOpenException extends IORuntimeException {
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+}
@@ -31,9 +31,8 @@ public class CloudFsService {
                 + "&override=" + override;
         
         try {
-            HttpResponse response = HttpClientService.createPostRequest(url, true)
-                    .form("file", localZipFile)
-                    .execute();
+            HttpResponse response = HttpClientService.execute(HttpClientService.createPostRequest(url, true)
+                    .form("file", localZipFile));
             
             HttpClientService.checkResponseStatus(response);
             
@@ -47,6 +46,10 @@ public class CloudFsService {
             TokenManager.notifyTokenExpired();
             NotificationUtil.showToast(null, e.getMessage());
             return false;
+        } catch (CircuitOpenException e) {
+            // 后端已熔断，只给出轻提示，避免弹窗堆积
+            NotificationUtil.showToast(null, e.getMessage());
+            return false;
         } catch (Exception e) {
             NotificationUtil.showErrorDialog(null, "上传ZIP失败: " + e.getMessage());
             e.printStackTrace();
@@ -65,7 +68,7 @@ public class CloudFsService {
                 + "?path=" + cloudPath;
         
         try {
-            HttpResponse response = HttpClientService.createGetRequest(url, true).execute();
+            HttpResponse response = HttpClientService.execute(HttpClientService.createGetRequest(url, true));
             HttpClientService.checkResponseStatus(response);
             
             // 检查响应状态
@@ -86,6 +89,10 @@ public class CloudFsService {
             TokenManager.notifyTokenExpired();
             NotificationUtil.showToast(null, e.getMessage());
             return false;
+        } catch (CircuitOpenException e) {
+            // 后端已熔断，只给出轻提示，避免弹窗堆积
+            NotificationUtil.showToast(null, e.getMessage());
+            return false;
         } catch (Exception e) {
             NotificationUtil.showErrorDialog(null, "下载ZIP失败: " + e.getMessage());
             e.printStackTrace();
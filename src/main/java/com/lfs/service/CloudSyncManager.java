@@ -0,0 +1,291 @@
+package com.lfs.service;
+
+import com.lfs.domain.ApiResponse;
+import com.lfs.domain.PendingContentWrite;
+import com.lfs.util.NotificationUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 云端保存的后台写入队列 (write-behind)
+ * 保存时先写入本地日志并立即返回，同一文档的多次保存只保留最新版本，
+ * 由后台线程异步上传，失败时按指数退避重试。日志位于本地副本目录下，程序重启后会继续同步。
+ */
+@Slf4j
+public class CloudSyncManager {
+
+    // 保存后稍等片刻再上传，连续 Ctrl+S 只会触发一次上传
+    private static final long FLUSH_DELAY_MS = 1000;
+    private static final long MIN_BACKOFF_MS = 2000;
+    private static final long MAX_BACKOFF_MS = 60_000;
+
+    private static final LocalReplicaService replicaService = new LocalReplicaService();
+    private static final UserPreferencesService prefsService = new UserPreferencesService();
+    private static final ContentService contentService = new ContentService();
+
+    private static final Map<Long, PendingContentWrite> pending = new ConcurrentHashMap<>();
+    private static final List<PendingWritesListener> listeners = new CopyOnWriteArrayList<>();
+    private static final List<ContentSyncedListener> syncedListeners = new CopyOnWriteArrayList<>();
+    // 各文档最近一次上传成功的时间，早于此时发出的下载请求拿到的是旧版本
+    private static final Map<Long, Long> lastSyncedAt = new ConcurrentHashMap<>();
+    // 日志文件与 pending 中的版本必须一起修改，否则上传完成时可能删掉刚写入的新版本日志
+    private static final Object JOURNAL_LOCK = new Object();
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "CloudSyncThread");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static ScheduledFuture<?> scheduledFlush;
+    private static int failedAttempts = 0;
+
+    static {
+        // 恢复上次退出前尚未同步的写入
+        for (PendingContentWrite write : replicaService.loadPendingWrites()) {
+            if (write.getId() != null) {
+                pending.put(write.getId(), write);
+            }
+        }
+        if (!pending.isEmpty()) {
+            log.info("从同步日志恢复了 {} 个待同步文档", pending.size());
+            scheduleFlush(FLUSH_DELAY_MS);
+        }
+        // 后端恢复后不必等退避结束，立即上传积压的写入
+        HttpClientService.addCircuitStateListener(state -> {
+            if (state == CircuitBreaker.State.CLOSED) {
+                flushNow();
+            }
+        });
+    }
+
+    private CloudSyncManager() {
+    }
+
+    /**
+     * 提交一次云端保存。写入日志后立即返回，上传在后台进行。日志需要落盘，不要在 EDT 上调用
+     * @param write 待同步的写入
+     * @throws IOException 本地日志写入失败，此时保存未生效
+     */
+    public static void enqueue(PendingContentWrite write) throws IOException {
+        write.setSavedAt(System.currentTimeMillis());
+        synchronized (JOURNAL_LOCK) {
+            replicaService.savePendingWrite(write);
+            pending.put(write.getId(), write);
+        }
+        notifyListeners();
+        synchronized (CloudSyncManager.class) {
+            // 新的保存重置退避，让用户的最新修改尽快上传
+            failedAttempts = 0;
+        }
+        scheduleFlush(FLUSH_DELAY_MS);
+    }
+
+    /**
+     * 获取尚未同步的最新内容，供打开文档时优先使用
+     * @param id 文档ID
+     * @return 待同步的内容，没有时返回 null
+     */
+    public static String getPendingContent(Long id) {
+        PendingContentWrite write = id == null ? null : pending.get(id);
+        return write == null ? null : write.getContent();
+    }
+
+    /**
+     * 文档被重命名或移动后，同步修改队列中的元数据，避免稍后的上传把名称改回去
+     */
+    public static void updateMetadata(Long id, Long dirId, String title) {
+        synchronized (JOURNAL_LOCK) {
+            PendingContentWrite write = pending.get(id);
+            if (write == null) {
+                return;
+            }
+            PendingContentWrite updated = write.toBuilder().dirId(dirId).title(title).build();
+            try {
+                replicaService.savePendingWrite(updated);
+            } catch (IOException e) {
+                log.warn("更新同步日志失败, id={}", id, e);
+            }
+            pending.replace(id, write, updated);
+        }
+    }
+
+    /**
+     * 放弃某个文档的待同步写入 (文档已被删除)
+     */
+    public static void discard(Long id) {
+        boolean removed;
+        synchronized (JOURNAL_LOCK) {
+            removed = pending.remove(id) != null;
+            if (removed) {
+                replicaService.removePendingWrite(id);
+            }
+        }
+        if (removed) {
+            notifyListeners();
+        }
+    }
+
+    /**
+     * 放弃所有待同步写入 (登出时调用)
+     */
+    public static void discardAll() {
+        for (Long id : new ArrayList<>(pending.keySet())) {
+            discard(id);
+        }
+    }
+
+    /**
+     * 立即尝试上传 (例如重新登录之后)
+     */
+    public static void flushNow() {
+        if (!pending.isEmpty()) {
+            synchronized (CloudSyncManager.class) {
+                failedAttempts = 0;
+            }
+            scheduleFlush(0);
+        }
+    }
+
+    /**
+     * @param id 文档ID
+     * @return 该文档最近一次上传成功的时间 (毫秒)，没有时返回 0
+     */
+    public static long getLastSyncedAt(Long id) {
+        return lastSyncedAt.getOrDefault(id, 0L);
+    }
+
+    public static int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 注册待同步数量变化的监听器，回调在 EDT 上执行
+     */
+    public static void addPendingWritesListener(PendingWritesListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 注册上传成功的监听器，回调在 EDT 上执行
+     */
+    public static void addContentSyncedListener(ContentSyncedListener listener) {
+        syncedListeners.add(listener);
+    }
+
+    private static synchronized void scheduleFlush(long delayMs) {
+        if (scheduledFlush != null && !scheduledFlush.isDone()) {
+            if (scheduledFlush.getDelay(TimeUnit.MILLISECONDS) <= delayMs) {
+                return;
+            }
+            scheduledFlush.cancel(false);
+        }
+        scheduledFlush = executor.schedule(CloudSyncManager::flush, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static void flush() {
+        if (prefsService.getToken() == null) {
+            // 未登录时暂停同步，登录后由 flushNow 继续
+            return;
+        }
+        boolean retry = false;
+        for (PendingContentWrite write : new ArrayList<>(pending.values())) {
+            try {
+                ApiResponse<?> response = contentService.pushContent(write.getId(), write.getDirId(),
+                        write.getTitle(), write.getContent(), write.getType());
+                if (!response.isSuccess()) {
+                    // 后端明确拒绝，重试没有意义；先把内容另存为冲突副本，再从队列中移除，修改不会丢失
+                    log.warn("云端拒绝了文档 {} 的同步: {}", write.getId(), response.getMessage());
+                    File conflict;
+                    try {
+                        conflict = replicaService.saveConflictCopy(write);
+                    } catch (IOException e) {
+                        // 另存失败时保留在日志中，按退避稍后再试
+                        log.warn("保存冲突副本失败, id={}", write.getId(), e);
+                        retry = true;
+                        continue;
+                    }
+                    SwingUtilities.invokeLater(() -> NotificationUtil.showErrorDialog(null,
+                            "同步 " + write.getTitle() + " 失败: " + response.getMessage()
+                                    + "\n本次修改已另存为: " + conflict.getAbsolutePath()));
+                } else {
+                    lastSyncedAt.put(write.getId(), System.currentTimeMillis());
+                    SwingUtilities.invokeLater(() -> {
+                        for (ContentSyncedListener listener : syncedListeners) {
+                            listener.onContentSynced(write);
+                        }
+                    });
+                }
+                // 只移除已上传的这个版本；上传期间如有新的保存，保留新版本及其日志等待下一轮
+                synchronized (JOURNAL_LOCK) {
+                    if (pending.remove(write.getId(), write)) {
+                        replicaService.removePendingWrite(write.getId());
+                    }
+                }
+            } catch (TokenExpiredException e) {
+                TokenManager.notifyTokenExpired();
+                return;
+            } catch (Exception e) {
+                log.warn("同步文档 {} 失败，稍后重试: {}", write.getId(), e.getMessage());
+                retry = true;
+                break;
+            }
+        }
+        notifyListeners();
+
+        synchronized (CloudSyncManager.class) {
+            if (retry) {
+                failedAttempts++;
+                scheduleFlush(nextBackoff(failedAttempts));
+            } else {
+                failedAttempts = 0;
+                if (!pending.isEmpty()) {
+                    scheduleFlush(FLUSH_DELAY_MS);
+                }
+            }
+        }
+    }
+
+    /**
+     * 带抖动的指数退避，避免多个客户端在后端恢复时同时重试
+     */
+    private static long nextBackoff(int attempts) {
+        long base = Math.min(MAX_BACKOFF_MS, MIN_BACKOFF_MS << Math.min(attempts - 1, 10));
+        return base / 2 + ThreadLocalRandom.current().nextLong(base / 2 + 1);
+    }
+
+    private static void notifyListeners() {
+        int count = pending.size();
+        SwingUtilities.invokeLater(() -> {
+            for (PendingWritesListener listener : listeners) {
+                listener.onPendingWritesChanged(count);
+            }
+        });
+    }
+
+    /**
+     * 待同步数量变化监听器接口
+     */
+    public interface PendingWritesListener {
+        void onPendingWritesChanged(int pendingCount);
+    }
+
+    /**
+     * 文档上传成功监听器接口
+     */
+    public interface ContentSyncedListener {
+        void onContentSynced(PendingContentWrite write);
+    }
+}
@@ -2,19 +2,97 @@ package com.lfs.service;
 
 import cn.hutool.core.io.IORuntimeException;
 import cn.hutool.core.io.resource.BytesResource;
+import cn.hutool.crypto.SecureUtil;
 import cn.hutool.http.HttpResponse;
 import cn.hutool.json.JSONUtil;
 import com.lfs.config.AppConfig;
 import com.lfs.domain.ApiResponse;
 import com.lfs.domain.ContentResponse;
+import com.lfs.domain.dto.ContentPatchRequest;
+import com.lfs.util.LineDiffUtil;
 import com.lfs.util.NotificationUtil;
+import lombok.extern.slf4j.Slf4j;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.ConnectException;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
+@Slf4j
 public class ContentService {
+
+    // 后台刷新本地副本使用的单线程执行器，守护线程不阻止程序退出
+    private static final ExecutorService REFRESH_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ContentReplicaRefresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 小于该大小的文档直接全量上传，计算差异不划算
+    private static final int PATCH_MIN_CONTENT_LENGTH = 32 * 1024;
+    // 变化行数超过该值时放弃增量上传
+    private static final int PATCH_MAX_EDITED_LINES = 2000;
+    // 后端不支持增量接口时，本次运行期间不再尝试
+    private static volatile boolean patchUnsupported = false;
+
+    private final LocalReplicaService replicaService = new LocalReplicaService();
+
+    /**
+     * 读取文档内容，优先使用本地尚未同步的修改，其次是本地副本
+     * 命中副本时立即返回，并在后台从云端拉取最新内容刷新副本；未命中时同步下载
+     *
+     * @param id          内容ID
+     * @param onRefreshed 后台刷新发现云端内容与返回的副本不同时，以新内容回调 (在后台线程上)，可为 null
+     * @return 文件内容字符串
+     */
+    public String loadContent(Long id, Consumer<String> onRefreshed) {
+        String unsynced = CloudSyncManager.getPendingContent(id);
+        if (unsynced != null) {
+            return unsynced;
+        }
+        String cached = replicaService.loadContent(id);
+        if (cached != null) {
+            REFRESH_EXECUTOR.submit(() -> refreshReplica(id, cached, onRefreshed));
+            return cached;
+        }
+        return downloadContent(id);
+    }
+
+    /**
+     * 静默地从云端拉取内容写入本地副本，失败时保留旧副本
+     * 云端内容与副本不同且本地没有待同步的修改时，通知已打开的编辑器
+     */
+    private void refreshReplica(Long id, String cached, Consumer<String> onRefreshed) {
+        String url = AppConfig.BASE_URL + AppConfig.CONTENT_DOWNLOAD_URL + "/" + id;
+        long requestedAt = System.currentTimeMillis();
+        try {
+            HttpResponse response = HttpClientService.execute(HttpClientService.createGetRequest(url, true));
+            if (response.getStatus() != 200) {
+                return;
+            }
+            String body = response.body();
+            if (body.equals(cached) || CloudSyncManager.getPendingContent(id) != null
+                    || CloudSyncManager.getLastSyncedAt(id) >= requestedAt) {
+                // 内容未变，或刷新期间用户已保存 (副本会在上传成功后更新)，或请求发出后已有上传成功，响应是旧版本
+                return;
+            }
+            replicaService.saveContent(id, body);
+            if (onRefreshed != null) {
+                onRefreshed.accept(body);
+            }
+        } catch (Exception e) {
+            log.debug("后台刷新文档副本失败, id={}: {}", id, e.getMessage());
+        }
+    }
+
     /**
      * 根据内容ID下载文件内容
      *
@@ -24,9 +102,85 @@ public class ContentService {
     public String downloadContent(Long id) {
         String url = AppConfig.BASE_URL + AppConfig.CONTENT_DOWNLOAD_URL + "/" + id;
         try {
-            HttpResponse response = HttpClientService.createGetRequest(url, true).execute();
+            HttpResponse response = HttpClientService.execute(HttpClientService.createGetRequest(url, true));
+            HttpClientService.checkResponseStatus(response);
+            if (response.getStatus() != 200) {
+                // 错误页不能写入副本，否则离线时会被当作文档内容，也会成为增量上传的基准
+                NotificationUtil.showErrorDialog(null, "下载文件失败，状态码: " + response.getStatus());
+                return null;
+            }
+            String body = response.body();
+            replicaService.saveContent(id, body);
+            return body;
+        } catch (CircuitOpenException e) {
+            // 后端已熔断，只给出轻提示，避免弹窗堆积
+            NotificationUtil.showToast(null, e.getMessage());
+            return null;
+        } catch (IORuntimeException e) {
+            if (e.getCause() instanceof ConnectException) {
+                NotificationUtil.showErrorDialog(null, "连接后端服务失败，请确认服务是否已启动。");
+            } else {
+                NotificationUtil.showErrorDialog(null, "下载文件时发生网络异常: " + e.getMessage());
+            }
+            e.printStackTrace();
+            return null;
+        } catch (TokenExpiredException e) {
+            TokenManager.notifyTokenExpired();
+            NotificationUtil.showToast(null, e.getMessage());
+            return null;
+        } catch (Exception e) {
+            NotificationUtil.showErrorDialog(null, "下载文件时发生未知异常: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 获取已完整缓存的文档副本文件 (没有未同步的修改时才有意义)
+     *
+     * @param id 内容ID
+     * @return 副本文件，没有时返回 null
+     */
+    public File getCachedContentFile(Long id) {
+        return replicaService.getCachedContentFile(id);
+    }
+
+    /**
+     * 以流的方式把文档内容下载到本地副本，不在内存中缓冲整个文档
+     * 每写入一块数据就回调一次监听器，查看器可以在下载完成前显示已到达的行
+     *
+     * @param id       内容ID
+     * @param listener 下载进度监听器，在调用线程上回调
+     * @return 下载完成的副本文件，失败时返回 null
+     */
+    public File streamContent(Long id, DownloadListener listener) {
+        String url = AppConfig.BASE_URL + AppConfig.CONTENT_DOWNLOAD_URL + "/" + id;
+        try (HttpResponse response = HttpClientService.executeAsync(HttpClientService.createGetRequest(url, true))) {
             HttpClientService.checkResponseStatus(response);
-            return response.body();
+            if (response.getStatus() != 200) {
+                NotificationUtil.showErrorDialog(null, "下载文件失败，状态码: " + response.getStatus());
+                return null;
+            }
+
+            File file = replicaService.beginDownload(id);
+            listener.onStart(file, response.contentLength());
+            try (InputStream in = response.bodyStream();
+                 OutputStream out = new FileOutputStream(file)) {
+                byte[] buffer = new byte[64 * 1024];
+                long total = 0;
+                int bytesRead;
+                while ((bytesRead = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, bytesRead);
+                    total += bytesRead;
+                    listener.onProgress(total);
+                }
+            }
+            replicaService.finishDownload(id);
+            return file;
+        } catch (CircuitOpenException e) {
+            // 后端已熔断，只给出轻提示，避免弹窗堆积
+            NotificationUtil.showToast(null, e.getMessage());
+            return null;
         } catch (IORuntimeException e) {
             if (e.getCause() instanceof ConnectException) {
                 NotificationUtil.showErrorDialog(null, "连接后端服务失败，请确认服务是否已启动。");
@@ -46,6 +200,23 @@ public class ContentService {
         }
     }
 
+    /**
+     * 流式下载进度监听器
+     */
+    public interface DownloadListener {
+        /**
+         * 开始写入
+         * @param file 正在写入的文件
+         * @param contentLength 响应声明的长度，未知时为 -1
+         */
+        void onStart(File file, long contentLength);
+
+        /**
+         * 已写入 bytesWritten 字节
+         */
+        void onProgress(long bytesWritten);
+    }
+
     /**
      * 创建新文档
      *
@@ -74,10 +245,9 @@ public class ContentService {
             BytesResource fileResource = new BytesResource(contentBytes, title + "." + type);
 
             // 3. 发送multipart/form-data请求
-            HttpResponse response = HttpClientService.createPostRequest(url, true)
+            HttpResponse response = HttpClientService.execute(HttpClientService.createPostRequest(url, true)
                     .form("meta", metaResource)
-                    .form("file", fileResource)
-                    .execute();
+                    .form("file", fileResource));
 
             HttpClientService.checkResponseStatus(response);
 
@@ -91,6 +261,7 @@ public class ContentService {
                     newContent.setId(Long.valueOf((Integer) data));
                     newContent.setDirId(dirId);
                     newContent.setTitle(title);
+                    replicaService.saveContent(newContent.getId(), content);
                     return newContent;
                 } else if (data != null) {
                     // 如果data不是Long，但也不是null，尝试解析成ContentResponse对象
@@ -111,6 +282,10 @@ public class ContentService {
             TokenManager.notifyTokenExpired();
             NotificationUtil.showToast(null, e.getMessage());
             return null;
+        } catch (CircuitOpenException e) {
+            // 后端已熔断，只给出轻提示，避免弹窗堆积
+            NotificationUtil.showToast(null, e.getMessage());
+            return null;
         } catch (Exception e) {
             NotificationUtil.showErrorDialog(null, "创建文件时发生异常: " + e.getMessage());
             e.printStackTrace();
@@ -127,40 +302,8 @@ public class ContentService {
      * @return 更新成功后的文档信息
      */
     public ContentResponse updateContent(Long id, Long dirId, String title, String content, String type) {
-        String url = AppConfig.BASE_URL + AppConfig.CONTENT_URL;
-
         try {
-            // 1. 构建meta部分
-            Map<String, Object> meta = new HashMap<>();
-            meta.put("id", id);
-            meta.put("dirId", dirId);
-            meta.put("title", title);
-            if (type != null && !type.isEmpty()) {
-                meta.put("type", type);
-            }
-            String metaJson = JSONUtil.toJsonStr(meta);
-            byte[] metaBytes = metaJson.getBytes(StandardCharsets.UTF_8);
-            BytesResource metaResource = new BytesResource(metaBytes, "meta.json");
-
-            var request = HttpClientService.createPutRequest(url, true)
-                    .form("meta", metaResource);
-
-            // 2. 如果提供了内容，则添加 file part
-            if (content != null) {
-                byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
-                String extension = (type != null && !type.isEmpty()) ? type : "txt";
-                BytesResource fileResource = new BytesResource(contentBytes, title + "." + extension);
-                request.form("file", fileResource);
-            }
-
-
-            // 3. 发送multipart/form-data请求
-            HttpResponse response = request.execute();
-
-            HttpClientService.checkResponseStatus(response);
-
-            String body = response.body();
-            ApiResponse apiResponse = JSONUtil.toBean(body, ApiResponse.class);
+            ApiResponse<?> apiResponse = pushContent(id, dirId, title, content, type);
 
             if (apiResponse.isSuccess()) {
                 // 更新操作成功后，返回一个包含更新后信息的新对象，以便UI刷新
@@ -178,6 +321,10 @@ public class ContentService {
             TokenManager.notifyTokenExpired();
             NotificationUtil.showToast(null, e.getMessage());
             return null;
+        } catch (CircuitOpenException e) {
+            // 后端已熔断，只给出轻提示，避免弹窗堆积
+            NotificationUtil.showToast(null, e.getMessage());
+            return null;
         } catch (Exception e) {
             NotificationUtil.showErrorDialog(null, "更新文件时发生异常: " + e.getMessage());
             e.printStackTrace();
@@ -185,6 +332,115 @@ public class ContentService {
         }
     }
 
+    /**
+     * 向云端提交文档更新，不弹出任何提示，异常直接抛给调用方 (供后台同步使用)
+     * @param id 文档ID
+     * @param dirId 目录ID
+     * @param title 文档标题
+     * @param content 文档内容 (可选, 为null则不更新)
+     * @param type 文档类型
+     * @return 后端响应
+     * @throws TokenExpiredException 登录已过期
+     */
+    public ApiResponse<?> pushContent(Long id, Long dirId, String title, String content, String type) {
+        if (content != null) {
+            ApiResponse<?> patchResponse = tryPushPatch(id, dirId, title, content, type);
+            if (patchResponse != null) {
+                return patchResponse;
+            }
+        }
+
+        String url = AppConfig.BASE_URL + AppConfig.CONTENT_URL;
+
+        // 1. 构建meta部分
+        Map<String, Object> meta = new HashMap<>();
+        meta.put("id", id);
+        meta.put("dirId", dirId);
+        meta.put("title", title);
+        if (type != null && !type.isEmpty()) {
+            meta.put("type", type);
+        }
+        String metaJson = JSONUtil.toJsonStr(meta);
+        byte[] metaBytes = metaJson.getBytes(StandardCharsets.UTF_8);
+        BytesResource metaResource = new BytesResource(metaBytes, "meta.json");
+
+        var request = HttpClientService.createPutRequest(url, true)
+                .form("meta", metaResource);
+
+        // 2. 如果提供了内容，则添加 file part
+        if (content != null) {
+            byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+            String extension = (type != null && !type.isEmpty()) ? type : "txt";
+            BytesResource fileResource = new BytesResource(contentBytes, title + "." + extension);
+            request.form("file", fileResource);
+        }
+
+        // 3. 发送multipart/form-data请求
+        HttpResponse response = HttpClientService.execute(request);
+
+        HttpClientService.checkResponseStatus(response);
+
+        ApiResponse<?> apiResponse = JSONUtil.toBean(response.body(), ApiResponse.class);
+        if (apiResponse.isSuccess() && content != null) {
+            replicaService.saveContent(id, content);
+        }
+        return apiResponse;
+    }
+
+    /**
+     * 尝试以增量补丁的方式上传：相对上次同步成功的版本 (本地副本) 计算按行差异，只发送变化部分
+     *
+     * @return 后端已接受补丁时返回其响应；不适合增量上传或后端要求全量上传时返回 null
+     * @throws TokenExpiredException 登录已过期
+     */
+    private ApiResponse<?> tryPushPatch(Long id, Long dirId, String title, String content, String type) {
+        if (patchUnsupported || content.length() < PATCH_MIN_CONTENT_LENGTH) {
+            return null;
+        }
+        String base = replicaService.loadContent(id);
+        if (base == null) {
+            return null;
+        }
+        List<ContentPatchRequest.Hunk> hunks = LineDiffUtil.diff(base, content, PATCH_MAX_EDITED_LINES);
+        if (hunks == null) {
+            return null;
+        }
+        long patchSize = 0;
+        for (ContentPatchRequest.Hunk hunk : hunks) {
+            patchSize += hunk.getText().length() + 16;
+        }
+        if (patchSize * 2 > content.length()) {
+            return null;
+        }
+
+        ContentPatchRequest patch = new ContentPatchRequest(id, dirId, title, type,
+                SecureUtil.sha256(base), SecureUtil.sha256(content), hunks);
+        String url = AppConfig.BASE_URL + AppConfig.CONTENT_PATCH_URL;
+        HttpResponse response = HttpClientService.execute(HttpClientService.createPutRequest(url, true)
+                .body(JSONUtil.toJsonStr(patch))
+                .contentType("application/json"));
+        HttpClientService.checkResponseStatus(response);
+
+        int status = response.getStatus();
+        if (status == 404 || status == 405 || status == 501) {
+            log.info("后端不支持增量更新接口 (HTTP {})，改为全量上传", status);
+            patchUnsupported = true;
+            return null;
+        }
+        if (status == 409) {
+            // 云端版本与本地基准不一致，回退到全量上传
+            return null;
+        }
+        ApiResponse<?> apiResponse = JSONUtil.toBean(response.body(), ApiResponse.class);
+        if (apiResponse.getCode() == 409) {
+            return null;
+        }
+        if (apiResponse.isSuccess()) {
+            replicaService.saveContent(id, content);
+        }
+        return apiResponse;
+    }
+
     /**
      * 删除文档
      * @param id 文档ID
@@ -193,19 +449,25 @@ public class ContentService {
     public boolean deleteContent(Long id) {
         String url = AppConfig.BASE_URL + AppConfig.CONTENT_URL + "/" + id;
         try {
-            HttpResponse response = HttpClientService.createDeleteRequest(url, true).execute();
+            HttpResponse response = HttpClientService.execute(HttpClientService.createDeleteRequest(url, true));
             HttpClientService.checkResponseStatus(response);
             String body = response.body();
             ApiResponse apiResponse = JSONUtil.toBean(body, ApiResponse.class);
 
             if (!apiResponse.isSuccess()) {
                 NotificationUtil.showErrorDialog(null, "删除文件失败: " + apiResponse.getMessage());
+            } else {
+                replicaService.removeContent(id);
             }
             return apiResponse.isSuccess();
         } catch (TokenExpiredException e) {
             TokenManager.notifyTokenExpired();
             NotificationUtil.showToast(null, e.getMessage());
             return false;
+        } catch (CircuitOpenException e) {
+            // 后端已熔断，只给出轻提示，避免弹窗堆积
+            NotificationUtil.showToast(null, e.getMessage());
+            return false;
         } catch (Exception e) {
             NotificationUtil.showErrorDialog(null, "删除文件时发生异常: " + e.getMessage());
             e.printStackTrace();
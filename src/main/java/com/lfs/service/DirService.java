@@ -1,5 +1,6 @@
 package com.lfs.service;
 
+import cn.hutool.core.io.IORuntimeException;
 import cn.hutool.core.lang.TypeReference;
 import cn.hutool.http.HttpResponse;
 import cn.hutool.json.JSONUtil;
@@ -14,15 +15,24 @@ import com.lfs.util.NotificationUtil;
 public class DirService {
 
     private final HttpClientService httpClientService = new HttpClientService();
+    private final LocalReplicaService replicaService = new LocalReplicaService();
 
     /**
-     * 获取云端目录树
+     * 获取本地副本中的目录树，用于在请求云端之前先行展示
+     * @return 目录树根节点，没有副本时返回 null
+     */
+    public DirTreeResponse getCachedDirTree() {
+        return replicaService.loadDirTree();
+    }
+
+    /**
+     * 获取云端目录树，成功后同步到本地副本；无法连接后端时回退到本地副本
      * @return 目录树根节点
      */
     public DirTreeResponse getDirTree() {
         String url = AppConfig.BASE_URL + AppConfig.DIR_TREE_URL;
         try {
-            cn.hutool.http.HttpResponse response = HttpClientService.createGetRequest(url, true).execute();
+            cn.hutool.http.HttpResponse response = HttpClientService.execute(HttpClientService.createGetRequest(url, true));
             HttpClientService.checkResponseStatus(response);
             String responseBody = response.body();
             if (responseBody == null) {
@@ -36,6 +46,7 @@ public class DirService {
 
 
             if (apiResponse != null && apiResponse.getCode() == 200) {
+                replicaService.saveDirTree(apiResponse.getData());
                 return apiResponse.getData();
             } else {
                 String errorMessage = apiResponse != null ? apiResponse.getMessage() : "未知错误";
@@ -47,6 +58,18 @@ public class DirService {
             NotificationUtil.showToast(null, e.getMessage());
             return null;
         } catch (Exception e) {
+            // 网络层异常时，如有本地副本则离线展示
+            if (e instanceof IORuntimeException) {
+                DirTreeResponse cached = replicaService.loadDirTree();
+                if (cached != null) {
+                    NotificationUtil.showToast(null, "无法连接云端，当前显示本地副本");
+                    return cached;
+                }
+                if (e instanceof CircuitOpenException) {
+                    NotificationUtil.showToast(null, e.getMessage());
+                    return null;
+                }
+            }
             String message = e.getMessage();
             if (e.getMessage().contains("SSLHandshakeException")) {
                 message = "服务器连接失败，请关闭代理或检查网络";
@@ -61,10 +84,9 @@ public class DirService {
         String url = AppConfig.BASE_URL + AppConfig.DIR_URL;
         try {
             CreateDirRequest request = new CreateDirRequest(parentId, name);
-            HttpResponse response = HttpClientService.createPostRequest(url, true)
+            HttpResponse response = HttpClientService.execute(HttpClientService.createPostRequest(url, true)
                     .body(JSONUtil.toJsonStr(request))
-                    .contentType("application/json")
-                    .execute();
+                    .contentType("application/json"));
 
             HttpClientService.checkResponseStatus(response);
 
@@ -80,6 +102,10 @@ public class DirService {
             TokenManager.notifyTokenExpired();
             NotificationUtil.showToast(null, e.getMessage());
             return null;
+        } catch (CircuitOpenException e) {
+            // 后端已熔断，只给出轻提示，避免弹窗堆积
+            NotificationUtil.showToast(null, e.getMessage());
+            return null;
         } catch (Exception e) {
             NotificationUtil.showErrorDialog(null, "创建目录时发生异常: " + e.getMessage());
             e.printStackTrace();
@@ -94,10 +120,9 @@ public class DirService {
         String url = AppConfig.BASE_URL + AppConfig.DIR_URL;
         try {
             UpdateDirRequest request = new UpdateDirRequest(id, parentId, name);
-            HttpResponse response = HttpClientService.createPutRequest(url, true)
+            HttpResponse response = HttpClientService.execute(HttpClientService.createPutRequest(url, true)
                     .body(JSONUtil.toJsonStr(request))
-                    .contentType("application/json")
-                    .execute();
+                    .contentType("application/json"));
 
             HttpClientService.checkResponseStatus(response);
 
@@ -113,6 +138,10 @@ public class DirService {
             TokenManager.notifyTokenExpired();
             NotificationUtil.showToast(null, e.getMessage());
             return null;
+        } catch (CircuitOpenException e) {
+            // 后端已熔断，只给出轻提示，避免弹窗堆积
+            NotificationUtil.showToast(null, e.getMessage());
+            return null;
         } catch (Exception e) {
             NotificationUtil.showErrorDialog(null, "更新目录时发生异常: " + e.getMessage());
             e.printStackTrace();
@@ -123,7 +152,7 @@ public class DirService {
     public boolean deleteDir(Long id) {
         String url = AppConfig.BASE_URL + AppConfig.DIR_URL + "/" + id;
         try {
-            HttpResponse response = HttpClientService.createDeleteRequest(url, true).execute();
+            HttpResponse response = HttpClientService.execute(HttpClientService.createDeleteRequest(url, true));
             HttpClientService.checkResponseStatus(response);
             BackendResponse<?> apiResponse = JSONUtil.toBean(response.body(), BackendResponse.class);
             if (apiResponse.getCode() != 200) {
@@ -135,6 +164,10 @@ public class DirService {
             TokenManager.notifyTokenExpired();
             NotificationUtil.showToast(null, e.getMessage());
             return false;
+        } catch (CircuitOpenException e) {
+            // 后端已熔断，只给出轻提示，避免弹窗堆积
+            NotificationUtil.showToast(null, e.getMessage());
+            return false;
         } catch (Exception e) {
             NotificationUtil.showErrorDialog(null, "删除目录时发生异常: " + e.getMessage());
             e.printStackTrace();
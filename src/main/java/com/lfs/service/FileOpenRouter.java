@@ -0,0 +1,254 @@
+package com.lfs.service;
+
+import com.lfs.util.ChunkedDocument;
+import com.lfs.util.ChunkedTextDecoder;
+import lombok.extern.slf4j.Slf4j;
+import org.fife.ui.rsyntaxtextarea.RSyntaxDocument;
+import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
+
+import javax.swing.text.BadLocationException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 决定用哪种方式打开本地文件
+ * 普通编辑器把整个文件读成字符串并为每行建立元素，大文件编辑器在后台分块加载，
+ * 映射查看器只按需读取可见的行。根据文件大小、抽样估计的行数和最长行、剩余堆内存选择其中一种；
+ * 大小阈值由首次运行时的校准测试得出并保存在用户偏好中
+ */
+@Slf4j
+public class FileOpenRouter {
+
+    /**
+     * 打开方式
+     */
+    public enum Route {
+        /** 普通编辑器 (EditorPanel) */
+        FULL,
+        /** 大文件编辑器 (LargeFileEditorPanel) */
+        CHUNKED,
+        /** 内存映射查看器 (VirtualEditorPanel) */
+        VIRTUAL
+    }
+
+    // 未校准时的默认阈值
+    private static final long DEFAULT_FULL_MAX_BYTES = 10L << 20;
+    private static final long DEFAULT_CHUNKED_MAX_BYTES = 256L << 20;
+    // 普通编辑器打开文件的目标耗时和大文件编辑器的可接受加载时间
+    private static final long FULL_LOAD_BUDGET_MS = 1_000;
+    private static final long CHUNKED_LOAD_BUDGET_MS = 5_000;
+    private static final long MIN_FULL_MAX_BYTES = 4L << 20;
+    private static final long MAX_FULL_MAX_BYTES = 64L << 20;
+    // 大文件编辑器的文档以 int 记录字符偏移，UTF-8 下字符数不超过字节数，上限远小于 2^31 字符
+    private static final long MAX_CHUNKED_MAX_BYTES = 1L << 30;
+    // 校准只测量建立文档，普通编辑器还要布局视图、折叠分析等，实测耗时按此倍数放大
+    private static final int FULL_COST_MARGIN = 2;
+    private static final int CALIBRATION_CHARS = 4 << 20;
+
+    // 在文件头、中、尾各抽样的字节数
+    private static final int SAMPLE_SIZE = 256 << 10;
+    // 超过该长度的行在文本组件中测量和绘制都很慢，交给按窗口显示长行的映射查看器
+    private static final int LONG_LINE_LENGTH = 64 << 10;
+    private static final long LONG_LINE_MIN_FILE_SIZE = 1L << 20;
+    // 每行的 Element 和两个 Position 的大致开销
+    private static final int LINE_OVERHEAD_BYTES = 120;
+    // 打开文件最多使用剩余堆内存的比例
+    private static final double HEAP_FRACTION = 0.6;
+
+    private final UserPreferencesService preferencesService;
+    private volatile long fullMaxBytes;
+    private volatile long chunkedMaxBytes;
+
+    public FileOpenRouter(UserPreferencesService preferencesService) {
+        this.preferencesService = preferencesService;
+        long full = preferencesService.loadFullEditorMaxBytes();
+        long chunked = preferencesService.loadChunkedEditorMaxBytes();
+        fullMaxBytes = full > 0 ? full : DEFAULT_FULL_MAX_BYTES;
+        // 旧版本保存的阈值可能超过上限
+        chunkedMaxBytes = chunked > 0 ? Math.min(chunked, MAX_CHUNKED_MAX_BYTES) : DEFAULT_CHUNKED_MAX_BYTES;
+        if (full <= 0 || chunked <= 0) {
+            // 在后台校准，完成前使用默认值
+            Thread thread = new Thread(this::calibrate, "FileOpenRouter-Calibration");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        }
+    }
+
+    /**
+     * @return 用普通编辑器打开的最大字节数，用于无法抽样的场景 (如边下载边判断)
+     */
+    public long getFullMaxBytes() {
+        return fullMaxBytes;
+    }
+
+    /**
+     * 为本地文件选择打开方式，只读取少量抽样，可以在 EDT 之外调用
+     * @param file 要打开的文件
+     * @return 打开方式
+     */
+    public Route route(File file) {
+        long size = file.length();
+        FileSample sample;
+        try {
+            sample = FileSample.read(file, size);
+        } catch (IOException e) {
+            log.warn("抽样读取 {} 失败，按文件大小选择打开方式", file.getName(), e);
+            sample = new FileSample(size, size / 80, 0);
+        }
+        long available = availableHeap();
+        Route route;
+        if (sample.maxLineLength > LONG_LINE_LENGTH && size > LONG_LINE_MIN_FILE_SIZE) {
+            route = Route.VIRTUAL;
+        } else if (size <= fullMaxBytes && fullEditorCost(sample) <= available) {
+            route = Route.FULL;
+        } else if (size <= chunkedMaxBytes && chunkedEditorCost(sample) <= available) {
+            route = Route.CHUNKED;
+        } else {
+            route = Route.VIRTUAL;
+        }
+        log.info("打开 {}: {} 字节, 约 {} 行, 抽样最长行 {} 字节, 可用堆 {} MB -> {}",
+                file.getName(), size, sample.estimatedLines, sample.maxLineLength, available >> 20, route);
+        return route;
+    }
+
+    /**
+     * 普通编辑器：读成字符串 (按 2 字节/字符计)，再复制进文档，并为每行建立元素
+     */
+    private static long fullEditorCost(FileSample sample) {
+        return sample.size * 4 + sample.estimatedLines * LINE_OVERHEAD_BYTES;
+    }
+
+    /**
+     * 大文件编辑器：分块解码直接写入文档，没有整文件的字符串副本
+     */
+    private static long chunkedEditorCost(FileSample sample) {
+        return sample.size * 2 + sample.estimatedLines * LINE_OVERHEAD_BYTES;
+    }
+
+    private static long availableHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return (long) ((runtime.maxMemory() - used) * HEAP_FRACTION);
+    }
+
+    /**
+     * 测量本机解码并构建文档的速度，换算成在目标耗时内能打开的文件大小并保存
+     */
+    void calibrate() {
+        try {
+            long start = System.currentTimeMillis();
+            byte[] text = syntheticText();
+            // 先运行一遍预热 JIT，再计时
+            loadFull(text);
+            long fullNanos = loadFull(text) * FULL_COST_MARGIN;
+            loadChunked(text);
+            long chunkedNanos = loadChunked(text);
+
+            long full = clamp(bytesWithin(FULL_LOAD_BUDGET_MS, text.length, fullNanos), MIN_FULL_MAX_BYTES, MAX_FULL_MAX_BYTES);
+            long chunked = clamp(bytesWithin(CHUNKED_LOAD_BUDGET_MS, text.length, chunkedNanos), full * 2, MAX_CHUNKED_MAX_BYTES);
+            fullMaxBytes = full;
+            chunkedMaxBytes = chunked;
+            preferencesService.saveOpenRouteThresholds(full, chunked);
+            log.info("打开方式校准完成: 普通编辑器 <= {} MB, 大文件编辑器 <= {} MB, 耗时 {} ms",
+                    full >> 20, chunked >> 20, System.currentTimeMillis() - start);
+        } catch (BadLocationException | RuntimeException e) {
+            log.warn("打开方式校准失败，使用默认阈值", e);
+        }
+    }
+
+    private static byte[] syntheticText() {
+        byte[] text = new byte[CALIBRATION_CHARS];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) (i % 80 == 79 ? '\n' : 'a' + i % 26);
+        }
+        return text;
+    }
+
+    /**
+     * 与普通编辑器相同的文档类型；用同步分词的 RSyntaxDocument 并启用语法，测量的是着色开启时的最坏情况
+     */
+    private static long loadFull(byte[] text) throws BadLocationException {
+        long start = System.nanoTime();
+        String content = new String(text, StandardCharsets.UTF_8);
+        new RSyntaxDocument(SyntaxConstants.SYNTAX_STYLE_JAVA).insertString(0, content, null);
+        return System.nanoTime() - start;
+    }
+
+    private static long loadChunked(byte[] text) throws BadLocationException {
+        long start = System.nanoTime();
+        int chunkSize = 1 << 20;
+        ChunkedDocument document = new ChunkedDocument();
+        ChunkedTextDecoder decoder = new ChunkedTextDecoder(StandardCharsets.UTF_8, chunkSize);
+        for (int offset = 0; offset < text.length; offset += chunkSize) {
+            int length = Math.min(chunkSize, text.length - offset);
+            document.insertString(document.getLength(), decoder.decode(text, offset, length).toString(), null);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long bytesWithin(long budgetMillis, long bytes, long nanos) {
+        return (long) (bytes * (budgetMillis * 1_000_000.0 / Math.max(1, nanos)));
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * 文件抽样统计：在文件头、中、尾各读取一段，估计总行数和最长行
+     */
+    private static final class FileSample {
+        private final long size;
+        private final long estimatedLines;
+        // 抽样中出现的最长行 (字节)，只是下限
+        private final int maxLineLength;
+
+        private FileSample(long size, long estimatedLines, int maxLineLength) {
+            this.size = size;
+            this.estimatedLines = estimatedLines;
+            this.maxLineLength = maxLineLength;
+        }
+
+        static FileSample read(File file, long size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long[] positions = size <= 3L * SAMPLE_SIZE
+                        ? new long[]{0}
+                        : new long[]{0, size / 2 - SAMPLE_SIZE / 2, size - SAMPLE_SIZE};
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, 3L * SAMPLE_SIZE));
+                long sampled = 0;
+                long newlines = 0;
+                int maxLineLength = 0;
+                for (long position : positions) {
+                    buffer.clear();
+                    if (positions.length > 1) {
+                        buffer.limit(SAMPLE_SIZE);
+                    }
+                    int read;
+                    do {
+                        read = channel.read(buffer, position + buffer.position());
+                    } while (read > 0 && buffer.hasRemaining());
+                    buffer.flip();
+                    int lineLength = 0;
+                    while (buffer.hasRemaining()) {
+                        if (buffer.get() == '\n') {
+                            newlines++;
+                            maxLineLength = Math.max(maxLineLength, lineLength);
+                            lineLength = 0;
+                        } else {
+                            lineLength++;
+                        }
+                    }
+                    maxLineLength = Math.max(maxLineLength, lineLength);
+                    sampled += buffer.limit();
+                }
+                long estimatedLines = sampled == 0 ? 1 : (long) (size * (newlines / (double) sampled)) + 1;
+                return new FileSample(size, estimatedLines, maxLineLength);
+            }
+        }
+    }
+}
@@ -3,22 +3,38 @@ package com.lfs.service;
 import com.lfs.config.AppConfig;
 
 import com.lfs.config.AppConfig;
+import com.lfs.util.LineOffsetIndex;
+import com.lfs.util.LinePieceTable;
 
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 
 /**
  * 文件处理
  */
 public class FileProcessorService {
 
+    // 流式保存时编码缓冲区的大小
+    private static final int SAVE_BUFFER_SIZE = 256 * 1024;
+
     /**
      * 处理所选目录，生成所有允许的文件内容的平面字符串。
      
@@ -127,6 +143,200 @@ public class FileProcessorService {
         Files.writeString(file.toPath(), content, StandardCharsets.UTF_8);
     }
 
+    /**
+     * 把 piece table 描述的文档流式写回文件：原文件中未修改的行段直接按字节复制，新行按 UTF-8 编码写入，
+     * 全程不在内存中拼出整个文档。先写同目录下的临时文件并刷盘，再原子替换原文件
+     * @param file          原文件
+     * @param lineOffsets   原文件的行偏移索引 (需覆盖整个文件)
+     * @param pieceTable    在原文件之上的编辑
+     * @param indexedLength 建立索引时原文件的长度，与磁盘上的长度不一致说明文件已被改写，不能按索引拼接
+     * @param lineSeparator 新行使用的换行符
+     * @throws IOException 读写异常，或原文件在索引之后被修改
+     */
+    public void saveLinePieces(File file, LineOffsetIndex lineOffsets, long indexedLength, LinePieceTable pieceTable,
+                               String lineSeparator) throws IOException {
+        Path target = file.toPath();
+        Path tmp = createTempFileLike(target);
+        try {
+            try (FileChannel source = FileChannel.open(target, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                long fileLength = source.size();
+                if (fileLength != indexedLength) {
+                    throw new IOException("文件已在磁盘上被修改 (截断、追加或轮转)，请重新打开后再编辑");
+                }
+                byte[] separator = lineSeparator.getBytes(StandardCharsets.UTF_8);
+                // 文档中的行以换行符分隔；原文件中的行段自带换行符，只有最后一行之后没有
+                boolean needSeparator = false;
+                List<LinePieceTable.Piece> pieces = pieceTable.getPieces();
+                for (int p = 0; p < pieces.size(); p++) {
+                    LinePieceTable.Piece piece = pieces.get(p);
+                    if (piece.isOriginal()) {
+                        int end = piece.getStart() + piece.getCount();
+                        long from = lineOffsets.get(piece.getStart());
+                        long to = end < lineOffsets.size() ? lineOffsets.get(end) : fileLength;
+                        if (p == pieces.size() - 1 && end < lineOffsets.size()) {
+                            // 文档最后一行来自原文件中间，去掉它的换行符
+                            to = stripLineTerminator(source, from, to);
+                        }
+                        if (needSeparator) {
+                            writeFully(out, ByteBuffer.wrap(separator));
+                        }
+                        while (from < to) {
+                            long transferred = source.transferTo(from, to - from, out);
+                            if (transferred <= 0) {
+                                // 写入期间文件被截断，继续循环不会结束
+                                throw new IOException("文件已在磁盘上被修改 (截断、追加或轮转)，请重新打开后再编辑");
+                            }
+                            from += transferred;
+                        }
+                        needSeparator = end >= lineOffsets.size();
+                    } else {
+                        for (int i = 0; i < piece.getCount(); i++) {
+                            if (needSeparator) {
+                                writeFully(out, ByteBuffer.wrap(separator));
+                            }
+                            writeFully(out, StandardCharsets.UTF_8.encode(pieceTable.addedText(piece, i)));
+                            needSeparator = true;
+                        }
+                    }
+                }
+                out.force(true);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 把 Swing 文档流式保存到文件：在文档读锁内逐段取出文本，经同一个编码器和缓冲区写入文件通道，
+     * 不生成整个文档的字符串。先写同目录下的临时文件并刷盘，再原子替换原文件。
+     * 可在后台线程调用，保存期间文档的修改会等待保存结束
+     * @param file     目标文件
+     * @param document 要保存的文档
+     * @throws IOException 写入异常
+     */
+    public void saveDocument(File file, Document document) throws IOException {
+        Path target = file.toPath();
+        Path tmp = createTempFileLike(target);
+        try {
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                IOException[] failure = new IOException[1];
+                document.render(() -> {
+                    try {
+                        writeDocument(document, out);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+                out.force(true);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 在目标文件所在目录创建临时文件，并尽量沿用目标文件的权限 (createTempFile 默认只有属主可读写)，
+     * 原子替换后文件权限不变
+     */
+    private static Path createTempFileLike(Path target) throws IOException {
+        Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        if (Files.exists(target)) {
+            try {
+                Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(target));
+            } catch (UnsupportedOperationException e) {
+                // 非 POSIX 文件系统 (如 Windows)，临时文件继承目录的默认权限
+            } catch (IOException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+        }
+        return tmp;
+    }
+
+    /**
+     * 按文档内部存储的分段直接编码写出，只有分段边界落在代理对中间时才复制两个字符
+     */
+    private static void writeDocument(Document document, FileChannel out) throws IOException {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(SAVE_BUFFER_SIZE);
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        // 取完整代理对时必须是连续的两个字符，不能再按分段部分返回
+        Segment pair = new Segment();
+        int length = document.getLength();
+        int offset = 0;
+        try {
+            while (offset < length) {
+                document.getText(offset, length - offset, segment);
+                CharBuffer chars = CharBuffer.wrap(segment.array, segment.offset, segment.count);
+                encode(encoder, chars, bytes, out, false);
+                int consumed = segment.count - chars.remaining();
+                if (consumed == 0) {
+                    // 分段只剩半个代理对，取出完整的两个字符
+                    document.getText(offset, Math.min(2, length - offset), pair);
+                    chars = CharBuffer.wrap(pair.array, pair.offset, pair.count);
+                    encode(encoder, chars, bytes, out, false);
+                    consumed = Math.max(1, pair.count - chars.remaining());
+                }
+                offset += consumed;
+            }
+        } catch (BadLocationException e) {
+            throw new IOException(e);
+        }
+        encode(encoder, CharBuffer.allocate(0), bytes, out, true);
+        while (encoder.flush(bytes).isOverflow()) {
+            drain(bytes, out);
+        }
+        drain(bytes, out);
+    }
+
+    private static void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer bytes, FileChannel out, boolean endOfInput) throws IOException {
+        while (encoder.encode(chars, bytes, endOfInput).isOverflow()) {
+            drain(bytes, out);
+        }
+    }
+
+    private static void drain(ByteBuffer bytes, FileChannel out) throws IOException {
+        bytes.flip();
+        writeFully(out, bytes);
+        bytes.clear();
+    }
+
+    /**
+     * @return 去掉 [from, to) 末尾的 \n 或 \r\n 之后的结束位置
+     */
+    private static long stripLineTerminator(FileChannel channel, long from, long to) throws IOException {
+        long start = Math.max(from, to - 2);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+        int length = buffer.position();
+        if (length > 0 && buffer.get(length - 1) == '\n') {
+            to--;
+            if (length > 1 && buffer.get(length - 2) == '\r') {
+                to--;
+            }
+        }
+        return to;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
     /**
      * 创建新文件
      * @param parentDir 父目录
@@ -0,0 +1,303 @@
+package com.lfs.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 大文件全文搜索服务
+ * 把文件切分为多个字节分段，在线程池中并行扫描内存映射的分段，再按文件顺序把命中位置交给调用方。
+ * 普通文本直接在字节上匹配；正则表达式按行解码后匹配，不支持跨行匹配
+ */
+@Slf4j
+public class FileSearchService {
+
+    /**
+     * 最多返回的命中数，达到后停止搜索
+     */
+    public static final int MAX_HITS = 10_000;
+
+    // 分段较小，线程池大致按文件顺序处理，靠前的结果可以很快显示
+    private static final long SEGMENT_SIZE = 8L << 20;
+    // 正则模式下行可以越过分段末尾，超过该长度的部分不再搜索
+    private static final int LINE_OVERSCAN = 1 << 20;
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(PARALLELISM, r -> {
+        Thread thread = new Thread(r, "FileSearch-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 搜索文件，阻塞直到完成、达到 MAX_HITS 或被取消
+     * @param file      要搜索的文件
+     * @param text      搜索内容 (单行)
+     * @param regex     是否按正则表达式搜索
+     * @param matchCase 是否区分大小写
+     * @param listener  命中监听器，在调用线程上按文件顺序回调
+     * @param cancelled 取消标记，设置后尽快结束搜索
+     * @return 命中总数
+     * @throws IOException 读取失败或线程被中断
+     * @throws java.util.regex.PatternSyntaxException 正则表达式无效
+     */
+    public int search(File file, String text, boolean regex, boolean matchCase,
+                      SearchListener listener, AtomicBoolean cancelled) throws IOException {
+        SegmentScanner scanner = createScanner(text, regex, matchCase);
+        long startTime = System.currentTimeMillis();
+        int total = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<Future<HitList>> futures = new ArrayList<>();
+            for (long start = 0; start < size; start += SEGMENT_SIZE) {
+                long segmentStart = start;
+                long segmentEnd = Math.min(size, start + SEGMENT_SIZE);
+                futures.add(EXECUTOR.submit(() -> scanner.scan(channel, segmentStart, segmentEnd, size, cancelled)));
+            }
+            try {
+                for (Future<HitList> future : futures) {
+                    if (cancelled.get()) {
+                        break;
+                    }
+                    HitList hits = future.get();
+                    int count = Math.min(hits.count, MAX_HITS - total);
+                    if (count > 0) {
+                        listener.onHits(hits.offsets, count);
+                        total += count;
+                    }
+                    if (total >= MAX_HITS) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("搜索被中断");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            } finally {
+                // 结束时置位，让仍在运行或排队的分段尽快退出
+                cancelled.set(true);
+                for (Future<HitList> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            log.info("搜索 {} 完成: {} 个结果, 耗时 {} ms", file.getName(), total, System.currentTimeMillis() - startTime);
+        }
+        return total;
+    }
+
+    private SegmentScanner createScanner(String text, boolean regex, boolean matchCase) {
+        if (!regex) {
+            boolean ascii = text.chars().allMatch(c -> c < 128);
+            if (matchCase || ascii) {
+                return new LiteralScanner(text.getBytes(StandardCharsets.UTF_8), !matchCase);
+            }
+            // 非 ASCII 的忽略大小写需要 Unicode 大小写规则，交给正则处理
+            return new RegexScanner(Pattern.compile(Pattern.quote(text), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+        }
+        int flags = matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        return new RegexScanner(Pattern.compile(text, flags));
+    }
+
+    /**
+     * 命中监听器
+     */
+    public interface SearchListener {
+        /**
+         * @param offsets 命中位置 (匹配开始的字节偏移)，只有前 count 个有效
+         * @param count   本批命中数
+         */
+        void onHits(long[] offsets, int count);
+    }
+
+    private interface SegmentScanner {
+        /**
+         * 扫描匹配开始位置在 [start, end) 内的命中
+         */
+        HitList scan(FileChannel channel, long start, long end, long size, AtomicBoolean cancelled) throws IOException;
+    }
+
+    /**
+     * 字节级的普通文本匹配，忽略大小写时只折叠 ASCII 字母
+     */
+    private static class LiteralScanner implements SegmentScanner {
+        private final byte[] pattern;
+        private final boolean ignoreCase;
+
+        LiteralScanner(byte[] pattern, boolean ignoreCase) {
+            this.ignoreCase = ignoreCase;
+            this.pattern = ignoreCase ? foldAscii(pattern) : pattern;
+        }
+
+        @Override
+        public HitList scan(FileChannel channel, long start, long end, long size, AtomicBoolean cancelled) throws IOException {
+            HitList hits = new HitList();
+            if (pattern.length == 0) {
+                return hits;
+            }
+            // 多映射 pattern.length - 1 个字节，跨分段末尾的匹配也能找到
+            long limit = Math.min(size, end + pattern.length - 1);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, limit - start);
+            int owned = (int) (end - start);
+            int last = (int) (limit - start) - pattern.length;
+            byte first = pattern[0];
+            for (int i = 0; i < owned && i <= last; i++) {
+                if ((i & 0xFFFF) == 0 && cancelled.get()) {
+                    break;
+                }
+                if (fold(buffer.get(i)) != first) {
+                    continue;
+                }
+                int j = 1;
+                while (j < pattern.length && fold(buffer.get(i + j)) == pattern[j]) {
+                    j++;
+                }
+                if (j == pattern.length) {
+                    hits.add(start + i);
+                    if (hits.count >= MAX_HITS) {
+                        break;
+                    }
+                    i += pattern.length - 1;
+                }
+            }
+            return hits;
+        }
+
+        private byte fold(byte b) {
+            return ignoreCase && b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+        }
+
+        private static byte[] foldAscii(byte[] bytes) {
+            byte[] folded = bytes.clone();
+            for (int i = 0; i < folded.length; i++) {
+                if (folded[i] >= 'A' && folded[i] <= 'Z') {
+                    folded[i] += 'a' - 'A';
+                }
+            }
+            return folded;
+        }
+    }
+
+    /**
+     * 按行解码为字符后做正则匹配，每个分段只处理起始位置在分段内的行
+     */
+    private static class RegexScanner implements SegmentScanner {
+        private final Pattern pattern;
+
+        RegexScanner(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public HitList scan(FileChannel channel, long start, long end, long size, AtomicBoolean cancelled) throws IOException {
+            HitList hits = new HitList();
+            long mapStart = Math.max(0, start - 1);
+            long limit = Math.min(size, end + LINE_OVERSCAN);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, limit - mapStart);
+            int length = (int) (limit - mapStart);
+            int owned = (int) (end - mapStart);
+
+            // 跳过从上一个分段延续过来的行
+            int lineStart = (int) (start - mapStart);
+            if (start > 0 && buffer.get(0) != '\n') {
+                while (lineStart < owned && buffer.get(lineStart) != '\n') {
+                    lineStart++;
+                }
+                lineStart++;
+            }
+
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer chars = CharBuffer.allocate(1024);
+            Matcher matcher = pattern.matcher("");
+            int linesScanned = 0;
+            while (lineStart < owned && hits.count < MAX_HITS) {
+                if ((++linesScanned & 0x3FF) == 0 && cancelled.get()) {
+                    break;
+                }
+                int lineEnd = lineStart;
+                while (lineEnd < length && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                ByteBuffer line = buffer.duplicate();
+                line.position(lineStart).limit(lineEnd);
+                if (chars.capacity() < lineEnd - lineStart) {
+                    chars = CharBuffer.allocate(lineEnd - lineStart);
+                }
+                chars.clear();
+                decoder.reset();
+                decoder.decode(line, chars, true);
+                decoder.flush(chars);
+                chars.flip();
+
+                matcher.reset(chars);
+                while (matcher.find() && hits.count < MAX_HITS) {
+                    hits.add(mapStart + lineStart + utf8Length(chars, matcher.start()));
+                }
+                lineStart = lineEnd + 1;
+            }
+            return hits;
+        }
+
+        /**
+         * 字符序列前 end 个字符的 UTF-8 字节数 (无效字节被替换为单个字符，结果可能略有偏差，只影响定位到行内的位置)
+         */
+        private static int utf8Length(CharSequence chars, int end) {
+            int bytes = 0;
+            for (int i = 0; i < end; i++) {
+                char c = chars.charAt(i);
+                if (c < 0x80) {
+                    bytes += 1;
+                } else if (c < 0x800) {
+                    bytes += 2;
+                } else if (Character.isHighSurrogate(c)) {
+                    bytes += 4;
+                    i++;
+                } else {
+                    bytes += 3;
+                }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * 可增长的 long 数组，避免为每个命中装箱
+     */
+    private static class HitList {
+        private long[] offsets = new long[64];
+        private int count;
+
+        void add(long offset) {
+            if (count == offsets.length) {
+                long[] grown = new long[offsets.length * 2];
+                System.arraycopy(offsets, 0, grown, 0, count);
+                offsets = grown;
+            }
+            offsets[count++] = offset;
+        }
+    }
+}
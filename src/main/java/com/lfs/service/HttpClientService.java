@@ -1,14 +1,40 @@
 package com.lfs.service;
 
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.http.HttpException;
 import cn.hutool.http.HttpRequest;
+import cn.hutool.http.HttpResponse;
+import cn.hutool.http.Method;
+import com.lfs.config.AppConfig;
+import lombok.extern.slf4j.Slf4j;
 
 import javax.net.ssl.*;
 import java.net.Proxy;
 import java.security.cert.X509Certificate;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
+@Slf4j
 public class HttpClientService {
 
     private static final UserPreferencesService prefsService = new UserPreferencesService();
+
+    private static final int DEFAULT_CONNECT_TIMEOUT_MS = 5000;
+    private static final int DEFAULT_READ_TIMEOUT_MS = 15_000;
+    // 按接口路径前缀配置读取超时，匹配最长的前缀；下载和上传可能较慢，登录和验证码应尽快失败
+    private static final Map<String, Integer> READ_TIMEOUTS = new LinkedHashMap<>();
+
+    // 幂等请求在网络故障或网关错误时最多尝试的次数
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BASE_DELAY_MS = 300;
+    private static final long RETRY_MAX_DELAY_MS = 3000;
+    private static final Set<Method> IDEMPOTENT_METHODS = EnumSet.of(Method.GET, Method.HEAD, Method.PUT, Method.DELETE, Method.OPTIONS);
+
+    // 所有接口共用同一个后端，因此共用一个熔断器
+    private static final CircuitBreaker circuitBreaker = new CircuitBreaker(5, 15_000);
     private static final SSLSocketFactory TRUST_ALL_SSL_FACTORY;
     private static final HostnameVerifier TRUST_ALL_HOSTNAME_VERIFIER;
 
@@ -40,6 +66,14 @@ public class HttpClientService {
         } catch (Exception e) {
             throw new RuntimeException("创建信任所有SSL工厂或主机名验证器失败", e);
         }
+
+        READ_TIMEOUTS.put(AppConfig.CONTENT_DOWNLOAD_URL, 120_000);
+        READ_TIMEOUTS.put(AppConfig.CONTENT_PATCH_URL, 60_000);
+        READ_TIMEOUTS.put(AppConfig.CONTENT_URL, 60_000);
+        READ_TIMEOUTS.put(AppConfig.CLOUD_FS_UPLOAD_ZIP_URL, 120_000);
+        READ_TIMEOUTS.put(AppConfig.CLOUD_FS_DOWNLOAD_ZIP_URL, 120_000);
+        READ_TIMEOUTS.put(AppConfig.LOGIN_URL, 10_000);
+        READ_TIMEOUTS.put(AppConfig.CAPTCHA_URL, 8000);
     }
 
 
@@ -52,7 +86,7 @@ public class HttpClientService {
     }
 
     /**
-     * 强制无代理并信任所有SSL
+     * 强制无代理并信任所有SSL，按接口设置超时
      * @param request HttpRequest
      */
     private static void configureRequest(HttpRequest request) {
@@ -64,6 +98,28 @@ public class HttpClientService {
             request.setSSLSocketFactory(TRUST_ALL_SSL_FACTORY);
             request.setHostnameVerifier(TRUST_ALL_HOSTNAME_VERIFIER);
         }
+
+        // 3. 连接超时统一较短，读取超时按接口区分
+        request.setConnectionTimeout(DEFAULT_CONNECT_TIMEOUT_MS);
+        request.setReadTimeout(resolveReadTimeout(request.getUrl()));
+    }
+
+    private static int resolveReadTimeout(String url) {
+        String path = url.startsWith(AppConfig.BASE_URL) ? url.substring(AppConfig.BASE_URL.length()) : url;
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        int timeout = DEFAULT_READ_TIMEOUT_MS;
+        int matchedLength = -1;
+        for (Map.Entry<String, Integer> entry : READ_TIMEOUTS.entrySet()) {
+            String prefix = entry.getKey();
+            if (prefix.length() > matchedLength && (path.equals(prefix) || path.startsWith(prefix + "/"))) {
+                timeout = entry.getValue();
+                matchedLength = prefix.length();
+            }
+        }
+        return timeout;
     }
 
     public static HttpRequest createGetRequest(String url, Boolean carryToken) {
@@ -96,6 +152,109 @@ public class HttpClientService {
         return applyAuth(request, carryToken);
     }
 
+    /**
+     * 经过熔断器发送请求。幂等请求 (GET/PUT/DELETE) 在网络故障或网关错误时按带抖动的指数退避重试，
+     * 非幂等请求只发送一次。熔断器打开时不发送请求，直接抛出 CircuitOpenException。
+     * 一次调用连同其重试只向熔断器计一次成功或失败
+     * @param request 已配置好的请求
+     * @return 响应
+     */
+    public static HttpResponse execute(HttpRequest request) {
+        return execute(request, false);
+    }
+
+    /**
+     * 与 execute 相同，但不立即读取响应体，用于流式下载
+     * @param request 已配置好的请求
+     * @return 响应，调用者负责关闭
+     */
+    public static HttpResponse executeAsync(HttpRequest request) {
+        return execute(request, true);
+    }
+
+    private static HttpResponse execute(HttpRequest request, boolean async) {
+        if (!circuitBreaker.allowRequest()) {
+            long seconds = Math.max(1, (circuitBreaker.getRetryAfterMs() + 999) / 1000);
+            throw new CircuitOpenException("云端服务暂时不可用，请约 " + seconds + " 秒后重试");
+        }
+        // 放行后必须恰好记录一次结果，否则半开状态的试探名额永远不会释放；其它异常也计为失败
+        boolean recorded = false;
+        int maxAttempts = IDEMPOTENT_METHODS.contains(request.getMethod()) ? MAX_ATTEMPTS : 1;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                HttpResponse response;
+                try {
+                    response = async ? request.executeAsync() : request.execute();
+                } catch (IORuntimeException | HttpException e) {
+                    if (attempt >= maxAttempts) {
+                        throw e;
+                    }
+                    log.debug("请求 {} 第 {} 次失败，稍后重试: {}", request.getUrl(), attempt, e.getMessage());
+                    if (!sleepBeforeRetry(attempt)) {
+                        throw e;
+                    }
+                    continue;
+                }
+
+                if (!isServerUnavailable(response.getStatus())) {
+                    circuitBreaker.recordSuccess();
+                    recorded = true;
+                    return response;
+                }
+                if (attempt >= maxAttempts) {
+                    circuitBreaker.recordFailure();
+                    recorded = true;
+                    return response;
+                }
+                log.debug("请求 {} 第 {} 次返回 {}，稍后重试", request.getUrl(), attempt, response.getStatus());
+                response.close();
+                if (!sleepBeforeRetry(attempt)) {
+                    throw new IORuntimeException("请求被中断: " + request.getUrl());
+                }
+            }
+        } finally {
+            if (!recorded) {
+                circuitBreaker.recordFailure();
+            }
+        }
+    }
+
+    /**
+     * 网关错误说明后端不可用，计入熔断并允许重试；其它状态码都是后端给出的有效应答
+     */
+    private static boolean isServerUnavailable(int status) {
+        return status == 502 || status == 503 || status == 504;
+    }
+
+    /**
+     * 带抖动的指数退避，避免大量请求在后端恢复的同一时刻重试
+     * @return 被中断时返回 false
+     */
+    private static boolean sleepBeforeRetry(int attempt) {
+        long cap = Math.min(RETRY_MAX_DELAY_MS, RETRY_BASE_DELAY_MS << (attempt - 1));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap / 2, cap + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 获取熔断器当前状态
+     */
+    public static CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * 注册熔断器状态变化监听器，回调在 EDT 上执行
+     */
+    public static void addCircuitStateListener(CircuitBreaker.StateListener listener) {
+        circuitBreaker.addStateListener(listener);
+    }
+
     /**
      * 检查响应状态，如果是401则抛出TokenExpiredException
      * 此方法需要在execute()之后调用
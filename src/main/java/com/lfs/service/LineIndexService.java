@@ -0,0 +1,407 @@
+package com.lfs.service;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.lfs.util.LineOffsetIndex;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 大文件行索引服务
+ * 把文件切分为多个分段并行扫描，每个分段以不超过 256 MB 的窗口内存映射，
+ * 每次读取 8 个字节并用 SWAR 位运算一次判断其中的换行符，最后按分段顺序合并结果。
+ * 大文件的索引会保存到 ~/.code-assistant/index 下的 sidecar 文件，再次打开同一文件时直接映射读取
+ */
+@Slf4j
+public class LineIndexService {
+
+    // 小于该大小的分段不再拆分，避免线程调度开销超过扫描本身
+    private static final long MIN_SEGMENT_SIZE = 32L << 20;
+    // 同步扫描的文件开头大小，足够显示第一屏
+    private static final long HEAD_SIZE = 256L << 10;
+    // 单个映射窗口的大小，FileChannel.map 要求小于 2 GB
+    private static final int MAP_WINDOW_SIZE = 256 << 20;
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private static final String INDEX_DIR = System.getProperty("user.home") + "/.code-assistant/index/";
+    // sidecar 文件头: 魔数 + 版本，版本变化时旧缓存自动失效
+    private static final long SIDECAR_MAGIC = 0x4C46534C494458L;
+    private static final int SIDECAR_VERSION = 1;
+    // 小文件重新扫描比读写缓存更快
+    private static final long SIDECAR_MIN_FILE_SIZE = 64L << 20;
+    // 文件头尾参与校验的字节数，防止大小和修改时间恰好相同的不同内容误用缓存
+    private static final int FINGERPRINT_SAMPLE_SIZE = 64 << 10;
+    private static final int MAX_SIDECAR_FILES = 32;
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(PARALLELISM, r -> {
+        Thread thread = new Thread(r, "LineIndexer-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ExecutorService SIDECAR_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "LineIndexSidecarWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 为文件建立行起始偏移索引，第一行从 0 开始，每个换行符之后开始新的一行
+     * @param file 要索引的文件
+     * @return 行索引
+     * @throws IOException 读取失败或线程被中断
+     */
+    public LineOffsetIndex buildIndex(File file) throws IOException {
+        LineOffsetIndex index = new LineOffsetIndex();
+        index.add(0);
+        buildIndex(file, index, null);
+        return index;
+    }
+
+    /**
+     * 渐进式建立索引：先同步扫描文件开头并立即回调，使第一屏可以马上显示；
+     * 其余部分并行扫描，每个分段按文件顺序合并进 index 后回调一次。
+     * 调用线程是 index 唯一的写入者，其它线程可以随时读取已写入的行
+     * @param file     要索引的文件
+     * @param index    目标索引，应已包含第一行的偏移 0
+     * @param listener 进度监听器，在调用线程上回调，可为 null
+     * @return 开始索引前记录的文件状态，其大小即已索引的字节数，供 cacheIndex 写入缓存
+     * @throws IOException 读取失败或线程被中断
+     */
+    public FileStamp buildIndex(File file, LineOffsetIndex index, IndexListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // 扫描前记录大小、修改时间和指纹，文件在扫描期间继续增长时缓存不会声称覆盖了新写入的部分
+            long size = channel.size();
+            FileStamp stamp = new FileStamp(size, file.lastModified(), fingerprint(file));
+            long startTime = System.currentTimeMillis();
+
+            long head = Math.min(size, HEAD_SIZE);
+            index.addAll(scanSegment(channel, 0, head));
+            if (listener != null) {
+                listener.onProgress(head, size);
+            }
+
+            long remaining = size - head;
+            // 分段数略多于线程数，分段之间行密度不同时负载更均衡
+            int segmentCount = (int) Math.max(1, Math.min(PARALLELISM * 2L, remaining / MIN_SEGMENT_SIZE));
+            long segmentSize = (remaining + segmentCount - 1) / segmentCount;
+
+            List<Future<LineOffsetIndex>> futures = new ArrayList<>(segmentCount);
+            List<Long> segmentEnds = new ArrayList<>(segmentCount);
+            for (long start = head; start < size; start += segmentSize) {
+                long segmentStart = start;
+                long segmentEnd = Math.min(size, start + segmentSize);
+                futures.add(EXECUTOR.submit(() -> scanSegment(channel, segmentStart, segmentEnd)));
+                segmentEnds.add(segmentEnd);
+            }
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    index.addAll(futures.get(i).get());
+                    // 合并后立即释放分段结果，峰值内存接近最终索引而不是它的两倍
+                    futures.set(i, null);
+                    if (listener != null) {
+                        listener.onProgress(segmentEnds.get(i), size);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("创建索引被中断");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            } finally {
+                for (Future<LineOffsetIndex> future : futures) {
+                    if (future != null) {
+                        future.cancel(true);
+                    }
+                }
+            }
+            log.info("为 {} 创建索引完成: {} 字节, {} 行, {} 个分段, 耗时 {} ms", file.getName(), size,
+                    index.size(), futures.size(), System.currentTimeMillis() - startTime);
+            return stamp;
+        }
+    }
+
+    /**
+     * 为文件 [from, to) 范围内新写入的字节追加索引，用于跟随仍在增长的文件。
+     * 使用定位读取而不是内存映射，不会妨碍其它进程截断或删除文件
+     * @param file  文件
+     * @param from  已索引的字节数
+     * @param to    本次索引到的位置
+     * @param index 目标索引，调用线程必须是它唯一的写入者
+     * @return 实际索引到的位置 (文件在此期间被截断时可能小于 to)
+     * @throws IOException 读取失败
+     */
+    public long indexRange(File file, long from, long to, LineOffsetIndex index) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            long position = from;
+            while (position < to) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), to - position));
+                int bytesRead = channel.read(buffer, position);
+                if (bytesRead <= 0) {
+                    break;
+                }
+                scanWindow(buffer, bytesRead, position, index);
+                position += bytesRead;
+            }
+            return position;
+        }
+    }
+
+    /**
+     * 读取文件的 sidecar 索引缓存。文件路径、大小、修改时间和头尾内容都一致时才会使用，
+     * 索引数据以内存映射方式读取，不会整体载入堆内存
+     * @param file 要打开的文件
+     * @return 缓存的索引，没有可用缓存时返回 null
+     */
+    public CachedIndex loadCachedIndex(File file) {
+        if (file.length() < SIDECAR_MIN_FILE_SIZE) {
+            return null;
+        }
+        try {
+            File sidecar = getSidecarFile(file);
+            if (!sidecar.isFile() || sidecar.length() > Integer.MAX_VALUE) {
+                return null;
+            }
+            long size = file.length();
+            long modified = file.lastModified();
+            byte[] fingerprint = fingerprint(file);
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(sidecar.toPath(), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (buffer.getLong() != SIDECAR_MAGIC || buffer.getInt() != SIDECAR_VERSION
+                    || buffer.getLong() != size || buffer.getLong() != modified) {
+                return null;
+            }
+            byte[] storedFingerprint = new byte[fingerprint.length];
+            buffer.get(storedFingerprint);
+            if (!Arrays.equals(fingerprint, storedFingerprint)) {
+                return null;
+            }
+            LineOffsetIndex index = LineOffsetIndex.map(buffer);
+            // 更新访问时间，清理时优先保留最近打开的文件
+            if (!sidecar.setLastModified(System.currentTimeMillis())) {
+                log.debug("更新索引缓存时间失败: {}", sidecar.getAbsolutePath());
+            }
+            log.info("使用缓存索引打开 {}: {} 行", file.getName(), index.size());
+            return new CachedIndex(index, size);
+        } catch (Exception e) {
+            log.warn("读取索引缓存失败: {}", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 在后台线程把完整的索引写入 sidecar 缓存 (文件太小时不缓存)
+     * @param file  索引对应的文件
+     * @param index 已完成的索引
+     * @param stamp buildIndex 返回的、扫描开始前的文件状态
+     */
+    public void cacheIndex(File file, LineOffsetIndex index, FileStamp stamp) {
+        if (stamp.size < SIDECAR_MIN_FILE_SIZE) {
+            return;
+        }
+        SIDECAR_EXECUTOR.submit(() -> {
+            try {
+                writeSidecar(file, index, stamp);
+                pruneSidecars();
+            } catch (Exception e) {
+                log.warn("保存索引缓存失败: {}", file.getAbsolutePath(), e);
+            }
+        });
+    }
+
+    private void writeSidecar(File file, LineOffsetIndex index, FileStamp stamp) throws IOException {
+        File sidecar = getSidecarFile(file);
+        File parent = sidecar.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("无法创建目录: " + parent.getAbsolutePath());
+        }
+        // 先写临时文件并刷盘，再原子替换，避免留下半个缓存文件
+        Path tmp = Files.createTempFile(parent.toPath(), sidecar.getName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                OutputStream channelOut = Channels.newOutputStream(channel);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(channelOut, 1 << 16));
+                out.writeLong(SIDECAR_MAGIC);
+                out.writeInt(SIDECAR_VERSION);
+                out.writeLong(stamp.size);
+                out.writeLong(stamp.modified);
+                out.write(stamp.fingerprint);
+                index.writeTo(out);
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(tmp, sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 只保留最近使用的若干个缓存文件
+     */
+    private void pruneSidecars() {
+        File[] sidecars = new File(INDEX_DIR).listFiles((dir, name) -> name.endsWith(".idx"));
+        if (sidecars == null || sidecars.length <= MAX_SIDECAR_FILES) {
+            return;
+        }
+        Arrays.sort(sidecars, Comparator.comparingLong(File::lastModified).reversed());
+        for (int i = MAX_SIDECAR_FILES; i < sidecars.length; i++) {
+            if (!sidecars[i].delete()) {
+                log.debug("删除过期索引缓存失败: {}", sidecars[i].getAbsolutePath());
+            }
+        }
+    }
+
+    private File getSidecarFile(File file) throws IOException {
+        return new File(INDEX_DIR + DigestUtil.sha256Hex(file.getCanonicalPath()) + ".idx");
+    }
+
+    /**
+     * 文件头尾各 64 KB 的 SHA-256 摘要
+     */
+    private byte[] fingerprint(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            byte[] buffer = new byte[(int) Math.min(length, FINGERPRINT_SAMPLE_SIZE)];
+            raf.readFully(buffer);
+            digest.update(buffer);
+            raf.seek(Math.max(0, length - buffer.length));
+            raf.readFully(buffer);
+            digest.update(buffer);
+        }
+        return digest.digest();
+    }
+
+    private LineOffsetIndex scanSegment(FileChannel channel, long start, long end) throws IOException {
+        LineOffsetIndex offsets = new LineOffsetIndex();
+        long position = start;
+        while (position < end) {
+            int length = (int) Math.min(MAP_WINDOW_SIZE, end - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            scanWindow(buffer, length, position, offsets);
+            position += length;
+        }
+        return offsets;
+    }
+
+    /**
+     * 扫描一个映射窗口。按小端序读取 long，低位字节对应较小的文件位置，
+     * 因此从最低位开始逐个取出命中的字节即可保证偏移按顺序追加
+     */
+    private void scanWindow(ByteBuffer buffer, int length, long base, LineOffsetIndex offsets) {
+        int wordEnd = length & ~7;
+        int i = 0;
+        for (; i < wordEnd; i += 8) {
+            long word = buffer.getLong(i) ^ NEWLINES;
+            // 等于 '\n' 的字节异或后为 0，下式只在这些字节的最高位留下 1，没有跨字节进位，不会误判
+            long found = ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+            while (found != 0) {
+                offsets.add(base + i + (Long.numberOfTrailingZeros(found) >>> 3) + 1);
+                found &= found - 1;
+            }
+        }
+        for (; i < length; i++) {
+            if (buffer.get(i) == '\n') {
+                offsets.add(base + i + 1);
+            }
+        }
+    }
+
+    /**
+     * 开始索引时的文件状态：大小、修改时间和头尾指纹
+     */
+    public static final class FileStamp {
+        private final long size;
+        private final long modified;
+        private final byte[] fingerprint;
+
+        private FileStamp(long size, long modified, byte[] fingerprint) {
+            this.size = size;
+            this.modified = modified;
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * @return 已索引的字节数
+         */
+        public long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * 从 sidecar 读取的索引及其覆盖的字节数
+     */
+    public static final class CachedIndex {
+        private final LineOffsetIndex index;
+        private final long indexedLength;
+
+        private CachedIndex(LineOffsetIndex index, long indexedLength) {
+            this.index = index;
+            this.indexedLength = indexedLength;
+        }
+
+        public LineOffsetIndex getIndex() {
+            return index;
+        }
+
+        /**
+         * @return 缓存写入时的文件大小，即索引覆盖的字节数
+         */
+        public long getIndexedLength() {
+            return indexedLength;
+        }
+    }
+
+    /**
+     * 索引进度监听器
+     */
+    public interface IndexListener {
+        /**
+         * @param scannedBytes 已按顺序合并进索引的字节数
+         * @param totalBytes   文件总字节数
+         */
+        void onProgress(long scannedBytes, long totalBytes);
+    }
+}
@@ -0,0 +1,311 @@
+package com.lfs.service;
+
+import cn.hutool.json.JSONUtil;
+import com.lfs.domain.DirTreeResponse;
+import com.lfs.domain.PendingContentWrite;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 云端工作区的本地副本
+ * 在 ~/.code-assistant/replica 下镜像目录树和文档内容，
+ * 使云端标签页在后端不可用或响应缓慢时也能立即浏览和打开文件
+ */
+@Slf4j
+public class LocalReplicaService {
+
+    private static final String REPLICA_DIR = System.getProperty("user.home") + "/.code-assistant/replica/";
+    private static final String TREE_FILE = "tree.json";
+    private static final String CONTENT_DIR = "content/";
+    private static final String PENDING_DIR = "pending/";
+    // 被云端拒绝的写入另存在这里，供用户手动找回
+    private static final String CONFLICT_DIR = "conflicts/";
+    // 下载未完成的标记文件后缀，存在标记时副本内容视为无效
+    private static final String INCOMPLETE_SUFFIX = ".incomplete";
+
+    // 多个服务实例共享同一份磁盘副本，所有读写都在这把锁下进行
+    private static final Object LOCK = new Object();
+
+    /**
+     * 保存目录树快照
+     * @param tree 目录树根节点
+     */
+    public void saveDirTree(DirTreeResponse tree) {
+        if (tree == null) {
+            return;
+        }
+        synchronized (LOCK) {
+            try {
+                writeAtomically(new File(REPLICA_DIR + TREE_FILE), JSONUtil.toJsonStr(tree).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                log.warn("保存目录树副本失败", e);
+            }
+        }
+    }
+
+    /**
+     * 读取目录树快照
+     * @return 目录树根节点，没有副本时返回 null
+     */
+    public DirTreeResponse loadDirTree() {
+        synchronized (LOCK) {
+            File treeFile = new File(REPLICA_DIR + TREE_FILE);
+            if (!treeFile.isFile()) {
+                return null;
+            }
+            try {
+                String json = Files.readString(treeFile.toPath(), StandardCharsets.UTF_8);
+                return JSONUtil.toBean(json, DirTreeResponse.class);
+            } catch (Exception e) {
+                log.warn("读取目录树副本失败", e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 保存文档内容
+     * @param id 文档ID
+     * @param content 文档内容
+     */
+    public void saveContent(Long id, String content) {
+        if (id == null || content == null) {
+            return;
+        }
+        synchronized (LOCK) {
+            try {
+                writeAtomically(getContentFile(id), content.getBytes(StandardCharsets.UTF_8));
+                Files.deleteIfExists(getIncompleteMarker(id).toPath());
+            } catch (IOException e) {
+                log.warn("保存文档副本失败, id={}", id, e);
+            }
+        }
+    }
+
+    /**
+     * 读取文档内容
+     * @param id 文档ID
+     * @return 文档内容，没有副本时返回 null
+     */
+    public String loadContent(Long id) {
+        if (id == null) {
+            return null;
+        }
+        synchronized (LOCK) {
+            File contentFile = getCachedContentFile(id);
+            if (contentFile == null) {
+                return null;
+            }
+            try {
+                return Files.readString(contentFile.toPath(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                log.warn("读取文档副本失败, id={}", id, e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 获取完整的文档副本文件，用于大文件直接以只读方式打开而不读入内存
+     * @param id 文档ID
+     * @return 副本文件，没有副本或副本尚未下载完成时返回 null
+     */
+    public File getCachedContentFile(Long id) {
+        if (id == null) {
+            return null;
+        }
+        File contentFile = getContentFile(id);
+        if (!contentFile.isFile() || getIncompleteMarker(id).exists()) {
+            return null;
+        }
+        return contentFile;
+    }
+
+    /**
+     * 开始把文档流式下载到副本位置。下载期间存在未完成标记，进程中途退出时副本不会被当作有效内容。
+     * 不使用临时文件加重命名，是因为下载中的文件同时被查看器打开，Windows 下无法重命名已打开的文件。
+     * @param id 文档ID
+     * @return 下载的目标文件
+     * @throws IOException 无法创建目录或标记文件
+     */
+    public File beginDownload(Long id) throws IOException {
+        synchronized (LOCK) {
+            File contentFile = getContentFile(id);
+            File parent = contentFile.getParentFile();
+            if (!parent.exists() && !parent.mkdirs()) {
+                throw new IOException("无法创建目录: " + parent.getAbsolutePath());
+            }
+            File marker = getIncompleteMarker(id);
+            if (!marker.exists() && !marker.createNewFile()) {
+                throw new IOException("无法创建标记文件: " + marker.getAbsolutePath());
+            }
+            return contentFile;
+        }
+    }
+
+    /**
+     * 流式下载完成，副本生效
+     * @param id 文档ID
+     */
+    public void finishDownload(Long id) {
+        synchronized (LOCK) {
+            try {
+                Files.deleteIfExists(getIncompleteMarker(id).toPath());
+            } catch (IOException e) {
+                log.warn("删除下载标记失败, id={}", id, e);
+            }
+        }
+    }
+
+    /**
+     * 删除文档副本
+     * @param id 文档ID
+     */
+    public void removeContent(Long id) {
+        if (id == null) {
+            return;
+        }
+        synchronized (LOCK) {
+            try {
+                Files.deleteIfExists(getContentFile(id).toPath());
+                Files.deleteIfExists(getIncompleteMarker(id).toPath());
+            } catch (IOException e) {
+                log.warn("删除文档副本失败, id={}", id, e);
+            }
+        }
+    }
+
+    /**
+     * 将待同步的写入记入日志，返回后即可认为本地保存已生效
+     * @param write 待同步的写入
+     * @throws IOException 日志写入失败
+     */
+    public void savePendingWrite(PendingContentWrite write) throws IOException {
+        synchronized (LOCK) {
+            writeAtomically(getPendingFile(write.getId()), JSONUtil.toJsonStr(write).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 读取日志中所有待同步的写入 (启动时恢复上次未完成的同步)
+     * @return 待同步的写入列表
+     */
+    public List<PendingContentWrite> loadPendingWrites() {
+        List<PendingContentWrite> writes = new ArrayList<>();
+        synchronized (LOCK) {
+            File[] files = new File(REPLICA_DIR + PENDING_DIR).listFiles((dir, name) -> name.endsWith(".json"));
+            if (files == null) {
+                return writes;
+            }
+            for (File file : files) {
+                try {
+                    String json = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+                    writes.add(JSONUtil.toBean(json, PendingContentWrite.class));
+                } catch (Exception e) {
+                    log.warn("读取同步日志失败: {}", file.getAbsolutePath(), e);
+                }
+            }
+        }
+        return writes;
+    }
+
+    /**
+     * 从日志中移除已同步或已放弃的写入
+     * @param id 文档ID
+     */
+    public void removePendingWrite(Long id) {
+        synchronized (LOCK) {
+            try {
+                Files.deleteIfExists(getPendingFile(id).toPath());
+            } catch (IOException e) {
+                log.warn("删除同步日志失败, id={}", id, e);
+            }
+        }
+    }
+
+    /**
+     * 把被云端拒绝的写入另存为冲突副本，之后才能从日志中移除
+     * @param write 被拒绝的写入
+     * @return 冲突副本文件
+     * @throws IOException 写入失败
+     */
+    public File saveConflictCopy(PendingContentWrite write) throws IOException {
+        File file = new File(REPLICA_DIR + CONFLICT_DIR + write.getId() + "-" + write.getSavedAt() + ".txt");
+        synchronized (LOCK) {
+            writeAtomically(file, write.getContent().getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    /**
+     * 清空整个副本 (登出时调用，避免下一个账号看到上一个账号的数据)
+     */
+    public void clear() {
+        synchronized (LOCK) {
+            deleteRecursively(new File(REPLICA_DIR));
+        }
+    }
+
+    /**
+     * 获取文档副本文件的位置
+     * @param id 文档ID
+     * @return 副本文件
+     */
+    public File getContentFile(Long id) {
+        return new File(REPLICA_DIR + CONTENT_DIR + id + ".txt");
+    }
+
+    private File getIncompleteMarker(Long id) {
+        return new File(REPLICA_DIR + CONTENT_DIR + id + INCOMPLETE_SUFFIX);
+    }
+
+    private File getPendingFile(Long id) {
+        return new File(REPLICA_DIR + PENDING_DIR + id + ".json");
+    }
+
+    /**
+     * 先写临时文件并刷盘，再原子替换，保证进程崩溃或断电时不会留下半个文件
+     */
+    private void writeAtomically(File target, byte[] data) throws IOException {
+        File parent = target.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("无法创建目录: " + parent.getAbsolutePath());
+        }
+        Path tmp = Files.createTempFile(parent.toPath(), target.getName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            log.warn("删除副本文件失败: {}", file.getAbsolutePath());
+        }
+    }
+}
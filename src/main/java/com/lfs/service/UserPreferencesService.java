@@ -21,6 +21,8 @@ public class UserPreferencesService {
     private static final String AUTH_TOKEN_KEY = "authToken";
     private static final String FONT_SIZE_KEY = "fontSize";
     private static final String LINE_WRAP_KEY = "lineWrap";
+    private static final String FULL_EDITOR_MAX_BYTES_KEY = "fullEditorMaxBytes";
+    private static final String CHUNKED_EDITOR_MAX_BYTES_KEY = "chunkedEditorMaxBytes";
 
     // 语法类型前缀
     private static final String FILE_SYNTAX_PREFIX = "fileSyntax_";
@@ -47,6 +49,30 @@ public class UserPreferencesService {
         return prefs.getBoolean(LINE_WRAP_KEY, false);
     }
 
+    /**
+     * 保存打开文件方式的校准结果
+     * @param fullEditorMaxBytes    用普通编辑器打开的最大文件大小
+     * @param chunkedEditorMaxBytes 用大文件编辑器打开的最大文件大小，更大的文件用只读映射查看器
+     */
+    public void saveOpenRouteThresholds(long fullEditorMaxBytes, long chunkedEditorMaxBytes) {
+        prefs.putLong(FULL_EDITOR_MAX_BYTES_KEY, fullEditorMaxBytes);
+        prefs.putLong(CHUNKED_EDITOR_MAX_BYTES_KEY, chunkedEditorMaxBytes);
+    }
+
+    /**
+     * @return 用普通编辑器打开的最大文件大小，尚未校准时返回 -1
+     */
+    public long loadFullEditorMaxBytes() {
+        return prefs.getLong(FULL_EDITOR_MAX_BYTES_KEY, -1);
+    }
+
+    /**
+     * @return 用大文件编辑器打开的最大文件大小，尚未校准时返回 -1
+     */
+    public long loadChunkedEditorMaxBytes() {
+        return prefs.getLong(CHUNKED_EDITOR_MAX_BYTES_KEY, -1);
+    }
+
 
     public void saveToken(String token) {
         if (token != null && !token.isEmpty()) {
@@ -1,6 +1,8 @@
 package com.lfs.ui;
 
 import com.lfs.service.UserPreferencesService;
+import com.lfs.util.EditorFeaturePolicy;
+import com.lfs.util.IncrementalSyntaxDocument;
 import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
 import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
 import org.fife.ui.rtextarea.RTextScrollPane;
@@ -25,8 +27,17 @@ public class EditorPanel extends JPanel {
     private Long cloudContentId;
     private Long cloudDirId;
     private String cloudTitle;
+    // 最近一次载入或保存的内容，用来判断是否有未保存的修改
+    private String savedContent;
 
     private String currentSyntax = "txt";
+    // 当前语法对应的高亮样式，高亮被降级时不会应用到文本框
+    private String syntaxStyle = SyntaxConstants.SYNTAX_STYLE_NONE;
+    // 当前内容的降级结果，null 表示全部功能启用
+    private EditorFeaturePolicy.Decision featureDecision;
+    // 用户选择了仍然启用，之后替换内容也不再降级
+    private boolean featuresForced;
+    private FeatureDegradationBanner degradationBanner;
 
     public String getCurrentSyntax() {
         return currentSyntax;
@@ -36,7 +47,7 @@ public class EditorPanel extends JPanel {
         super(new BorderLayout());
         this.controller = controller;
         this.preferencesService = preferencesService;
-        this.rightTextArea = new RSyntaxTextArea();
+        this.rightTextArea = new RSyntaxTextArea(new IncrementalSyntaxDocument(SyntaxConstants.SYNTAX_STYLE_NONE));
         initUI();
         setupSaveShortcut();
         setupFindShortcut();
@@ -147,6 +158,8 @@ public class EditorPanel extends JPanel {
         RTextScrollPane rightScrollPane = new RTextScrollPane(rightTextArea);
         rightScrollPane.setLineNumbersEnabled(true);
 
+        degradationBanner = new FeatureDegradationBanner(this::enableAllFeatures);
+        add(degradationBanner, BorderLayout.NORTH);
         add(rightScrollPane, BorderLayout.CENTER);
     }
 
@@ -173,15 +186,61 @@ public class EditorPanel extends JPanel {
         return rightTextArea.getText();
     }
 
+    /**
+     * 记录已载入或已保存的内容，之后与它不同即视为有修改
+     */
+    public void markSaved(String content) {
+        savedContent = content;
+    }
+
+    /**
+     * @return 当前内容是否与最近一次载入或保存的内容不同 (撤销回原样视为未修改)
+     */
+    public boolean isModified() {
+        return savedContent == null || !savedContent.equals(getTextAreaContent());
+    }
+
     public RSyntaxTextArea getTextArea() {
         return rightTextArea;
     }
 
+    /**
+     * 设置文本内容，内容过大或行过长时先关闭开销大的功能再放入文本框，并在顶部提示
+     */
     public void setTextAreaContent(String content) {
+        if (!featuresForced) {
+            featureDecision = EditorFeaturePolicy.decide(EditorFeaturePolicy.measure(content));
+            applyFeatures();
+            if (featureDecision.isDegraded()) {
+                degradationBanner.showMessage(featureDecision.describe(), true);
+            } else {
+                degradationBanner.setVisible(false);
+            }
+        }
         rightTextArea.setText(content);
         rightTextArea.discardAllEdits();
     }
 
+    private boolean isFeatureEnabled(EditorFeaturePolicy.Feature feature) {
+        return featureDecision == null || featureDecision.isEnabled(feature);
+    }
+
+    private void applyFeatures() {
+        rightTextArea.setSyntaxEditingStyle(isFeatureEnabled(EditorFeaturePolicy.Feature.HIGHLIGHTING)
+                ? syntaxStyle : SyntaxConstants.SYNTAX_STYLE_NONE);
+        rightTextArea.setCodeFoldingEnabled(isFeatureEnabled(EditorFeaturePolicy.Feature.FOLDING));
+        rightTextArea.setBracketMatchingEnabled(isFeatureEnabled(EditorFeaturePolicy.Feature.BRACKET_MATCHING));
+    }
+
+    /**
+     * 用户选择仍然启用被降级的功能
+     */
+    private void enableAllFeatures() {
+        featuresForced = true;
+        featureDecision = null;
+        applyFeatures();
+    }
+
     public File getCurrentFile() {
         return currentFile;
     }
@@ -251,7 +310,8 @@ public class EditorPanel extends JPanel {
                 effectiveExtension = "none";
                 break;
         }
-        rightTextArea.setSyntaxEditingStyle(style);
+        this.syntaxStyle = style;
+        applyFeatures();
         this.currentSyntax = effectiveExtension;
         updateSyntaxMenuSelection(effectiveExtension);
 
@@ -0,0 +1,58 @@
+package com.lfs.ui;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * 编辑器顶部的提示条，说明为大文件关闭了哪些功能及原因，并提供重新启用的入口
+ */
+public class FeatureDegradationBanner extends JPanel {
+
+    private final JLabel messageLabel;
+    private final JButton enableButton;
+
+    /**
+     * @param onEnable 用户选择仍然启用时的回调
+     */
+    public FeatureDegradationBanner(Runnable onEnable) {
+        super(new BorderLayout());
+        setBackground(new Color(0x4A, 0x3F, 0x1E));
+        setBorder(BorderFactory.createEmptyBorder(3, 8, 3, 4));
+
+        messageLabel = new JLabel();
+        messageLabel.setForeground(new Color(0xE8, 0xD8, 0xA8));
+
+        enableButton = new JButton("仍然启用");
+        enableButton.setFocusable(false);
+        enableButton.addActionListener(e -> {
+            setVisible(false);
+            onEnable.run();
+        });
+
+        JButton closeButton = new JButton("×");
+        closeButton.setFocusable(false);
+        closeButton.setToolTipText("关闭提示");
+        closeButton.addActionListener(e -> setVisible(false));
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 4, 0));
+        buttonPanel.setOpaque(false);
+        buttonPanel.add(enableButton);
+        buttonPanel.add(closeButton);
+
+        add(messageLabel, BorderLayout.CENTER);
+        add(buttonPanel, BorderLayout.EAST);
+        setVisible(false);
+    }
+
+    /**
+     * 显示提示
+     * @param message   说明文字
+     * @param canEnable 是否允许用户重新启用 (功能在当前模式下不可用时为 false)
+     */
+    public void showMessage(String message, boolean canEnable) {
+        messageLabel.setText(message);
+        messageLabel.setToolTipText(message);
+        enableButton.setVisible(canEnable);
+        setVisible(true);
+    }
+}
@@ -47,7 +47,6 @@ public class FileExplorerPanel extends JPanel {
     private DefaultTreeModel cloudTreeModel;
     private DefaultMutableTreeNode cloudRootNode;
     private DirService dirService;
-    private ContentService contentService;
     private CloudFsService cloudFsService;
     private DirTreeResponse cloudApiRoot;
 
@@ -58,7 +57,6 @@ public class FileExplorerPanel extends JPanel {
         this.prefsService = new UserPreferencesService();
         this.fileProcessorService = new FileProcessorService();
         this.dirService = new DirService();
-        this.contentService = new ContentService();
         this.cloudFsService = new CloudFsService();
 
         rootNode = new DefaultMutableTreeNode();
@@ -189,29 +187,7 @@ public class FileExplorerPanel extends JPanel {
                                 return;
                             }
 
-                            setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-
-                            new SwingWorker<String, Void>() {
-                                @Override
-                                protected String doInBackground() {
-                                    return contentService.downloadContent(fileInfo.getId());
-                                }
-
-                                @Override
-                                protected void done() {
-                                    try {
-                                        String content = get();
-                                        if (content != null) {
-                                            controller.onCloudFileSelected(fileInfo, content);
-                                        }
-                                    } catch (Exception ex) {
-                                        NotificationUtil.showErrorDialog(FileExplorerPanel.this, "加载云端文件失败: " + ex.getMessage());
-                                        ex.printStackTrace();
-                                    } finally {
-                                        setCursor(Cursor.getDefaultCursor());
-                                    }
-                                }
-                            }.execute();
+                            controller.openCloudFile(fileInfo);
                         }
                     }
                 }
@@ -620,23 +596,33 @@ public class FileExplorerPanel extends JPanel {
 
     public void loadCloudDirectory() {
         setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-        new SwingWorker<DirTreeResponse, Void>() {
+        cloudApiRoot = null;
+        new SwingWorker<DirTreeResponse, DirTreeResponse>() {
             @Override
             protected DirTreeResponse doInBackground() throws Exception {
+                // 先展示本地副本，再向云端请求最新目录树
+                DirTreeResponse cached = dirService.getCachedDirTree();
+                if (cached != null) {
+                    publish(cached);
+                }
                 return dirService.getDirTree();
             }
 
+            @Override
+            protected void process(List<DirTreeResponse> chunks) {
+                cloudApiRoot = chunks.get(chunks.size() - 1);
+                renderCloudTree(cloudApiRoot);
+                setCursor(Cursor.getDefaultCursor());
+            }
+
             @Override
             protected void done() {
                 try {
-                    cloudApiRoot = get();
-                    cloudRootNode.removeAllChildren();
-                    if (cloudApiRoot != null) {
-                        DefaultMutableTreeNode rootTreeNode = new DefaultMutableTreeNode(cloudApiRoot);
-                        cloudRootNode.add(rootTreeNode);
-                        buildCloudTree(rootTreeNode, cloudApiRoot);
-                        cloudTreeModel.reload(cloudRootNode);
-                    } else {
+                    DirTreeResponse latest = get();
+                    if (latest != null) {
+                        cloudApiRoot = latest;
+                        renderCloudTree(cloudApiRoot);
+                    } else if (cloudApiRoot == null) {
                         // 如果获取失败（cloudApiRoot 为 null），禁用云端Tab并切回本地
                         setCloudTabEnabled(false);
                         switchToLocalTab();
@@ -654,6 +640,14 @@ public class FileExplorerPanel extends JPanel {
         }.execute();
     }
 
+    private void renderCloudTree(DirTreeResponse root) {
+        cloudRootNode.removeAllChildren();
+        DefaultMutableTreeNode rootTreeNode = new DefaultMutableTreeNode(root);
+        cloudRootNode.add(rootTreeNode);
+        buildCloudTree(rootTreeNode, root);
+        cloudTreeModel.reload(cloudRootNode);
+    }
+
     private void buildCloudTree(DefaultMutableTreeNode parent, DirTreeResponse dir) {
         if (dir.getContents() != null && !dir.getContents().isEmpty()) {
             for (ContentResponse content : dir.getContents()) {
@@ -1,44 +1,113 @@
 package com.lfs.ui;
 
+import com.lfs.util.DocumentSearcher;
+import com.lfs.util.LiteralSearcher;
+import com.lfs.util.MatchIndex;
+import org.fife.ui.rtextarea.RTextArea;
+
 import javax.swing.*;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Document;
 import javax.swing.text.Highlighter;
 import java.awt.*;
-import java.awt.event.KeyAdapter;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
-import java.util.regex.Matcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import javax.swing.Timer;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 
+/**
+ * 查找和替换对话框
+ * 输入停顿后在后台线程上按窗口扫描文档，把全部匹配收集到 MatchIndex 中，结果逐批显示；
+ * 之后的下一个/上一个、"第 X / N 个" 和可见区域的高亮都是在索引上二分查找。
+ * 索引建好后文档的编辑只在编辑附近重新查找；建立期间文档被编辑或查找内容变化时取消重建。
+ * 普通文本用 LiteralSearcher 查找，正则表达式用 Pattern，两者在查找内容不变时复用。
+ * 全部替换从后向前逐个修改文档，不生成整个文档的字符串副本
+ */
 public class FindReplaceDialog extends JDialog {
 
+    /**
+     * 全部替换期间文本组件上该客户端属性为 TRUE，编辑器可据此把这一批修改合并为一次撤销
+     */
+    public static final String REPLACE_ALL_PROPERTY = "FindReplaceDialog.replaceAll";
+
+    // 输入停顿多久后开始查找
+    private static final int SEARCH_DELAY_MS = 250;
+    // 每批提交给 EDT 的匹配数
+    private static final int MATCH_BATCH_SIZE = 1024;
+    // 可见区域内最多高亮的匹配数，避免极密集的匹配拖慢绘制
+    private static final int MAX_VISIBLE_HIGHLIGHTS = 2000;
+
     private final JTextArea textArea;
     private final JTextField findField;
     private final JTextField replaceField;
     private final JCheckBox regexCheckBox;
+    private final JCheckBox matchCaseCheckBox;
     private final JLabel statusLabel;
     private final Highlighter highlighter;
     private final Highlighter.HighlightPainter painter;
+    private final Highlighter.HighlightPainter matchPainter;
+    private final Timer searchTimer;
 
+    // 当前选中的匹配的起止位置，没有时为 -1
     private int lastMatchIndex = -1;
+    private int lastMatchEnd = -1;
+    private Object currentHighlight;
+    private final List<Object> matchHighlights = new ArrayList<>();
+
+    // 当前查找内容的全部匹配；indexComplete 为 false 时只是文档开头的一部分
+    private final MatchIndex matchIndex = new MatchIndex();
+    private boolean indexComplete;
+    // 建立索引所用的查询 (见 queryKey) 和查找器，查找器供编辑后的增量更新使用
+    private String indexQuery;
+    private DocumentSearcher indexSearcher;
+    private JViewport viewport;
+    private final ChangeListener viewportListener = e -> refreshVisibleHighlights();
+
+    // 缓存的查找引擎，查询不变时不重新编译；二者只有一个非空
+    private String cachedQuery;
+    private Pattern cachedPattern;
+    private LiteralSearcher cachedLiteral;
+
+    private SwingWorker<Integer, int[]> searchWorker;
+    private Document document;
+    // 文档每次修改加一，后台查找发现版本变化即放弃
+    private volatile int documentVersion;
+    private final DocumentListener documentListener = new DocumentListener() {
+        public void insertUpdate(DocumentEvent e) {
+            documentChanged(e);
+        }
+        public void removeUpdate(DocumentEvent e) {
+            documentChanged(e);
+        }
+        public void changedUpdate(DocumentEvent e) {
+            // 属性变化不影响文本
+        }
+    };
 
     public FindReplaceDialog(Frame owner, JTextArea textArea) {
         super(owner, "查找和替换", false);
         this.textArea = textArea;
         this.highlighter = textArea.getHighlighter();
         this.painter = new DefaultHighlighter.DefaultHighlightPainter(new Color(177, 220, 252)); // 浅蓝色高亮
+        this.matchPainter = new DefaultHighlighter.DefaultHighlightPainter(new Color(110, 100, 50)); // 其余匹配
 
         // --- UI 组件 ---
         findField = new JTextField(20);
         replaceField = new JTextField(20);
         regexCheckBox = new JCheckBox("正则表达式");
+        matchCaseCheckBox = new JCheckBox("区分大小写", true);
         statusLabel = new JLabel(" ");
 
         JButton findNextButton = new JButton("查找下一个");
+        JButton findPreviousButton = new JButton("查找上一个");
         JButton replaceButton = new JButton("替换");
         JButton replaceAllButton = new JButton("全部替换");
         JButton closeButton = new JButton("关闭");
@@ -52,12 +121,14 @@ public class FindReplaceDialog extends JDialog {
         gbc.gridx = 0; gbc.gridy = 0; panel.add(new JLabel("查找:"), gbc);
         gbc.gridx = 1; gbc.gridy = 0; gbc.gridwidth = 2; panel.add(findField, gbc);
         gbc.gridx = 3; gbc.gridy = 0; gbc.gridwidth = 1; panel.add(findNextButton, gbc);
+        gbc.gridx = 4; gbc.gridy = 0; panel.add(findPreviousButton, gbc);
 
         gbc.gridx = 0; gbc.gridy = 1; panel.add(new JLabel("替换为:"), gbc);
         gbc.gridx = 1; gbc.gridy = 1; gbc.gridwidth = 2; panel.add(replaceField, gbc);
         gbc.gridx = 3; gbc.gridy = 1; gbc.gridwidth = 1; panel.add(replaceButton, gbc);
 
         gbc.gridx = 1; gbc.gridy = 2; panel.add(regexCheckBox, gbc);
+        gbc.gridx = 2; gbc.gridy = 2; panel.add(matchCaseCheckBox, gbc);
         gbc.gridx = 3; gbc.gridy = 2; panel.add(replaceAllButton, gbc);
 
         gbc.gridx = 0; gbc.gridy = 3; gbc.gridwidth = 3; panel.add(statusLabel, gbc);
@@ -65,13 +136,23 @@ public class FindReplaceDialog extends JDialog {
 
         // --- 监听器 ---
         findNextButton.addActionListener(e -> findNext());
+        findPreviousButton.addActionListener(e -> findPrevious());
         replaceButton.addActionListener(e -> replace());
         replaceAllButton.addActionListener(e -> replaceAll());
         closeButton.addActionListener(e -> dispose());
 
         // 延迟搜索的计时器
-        Timer searchTimer = new Timer(500, e -> updateOccurrenceCount());
+        searchTimer = new Timer(SEARCH_DELAY_MS, e -> updateOccurrenceCount());
         searchTimer.setRepeats(false);
+        regexCheckBox.addActionListener(e -> searchTimer.restart());
+        matchCaseCheckBox.addActionListener(e -> searchTimer.restart());
+
+        // 显示期间文档被编辑或替换后重新统计
+        textArea.addPropertyChangeListener("document", e -> {
+            if (document != null) {
+                attachDocument(textArea.getDocument());
+            }
+        });
 
         findField.getDocument().addDocumentListener(new DocumentListener() {
             public void insertUpdate(DocumentEvent e) {
@@ -86,6 +167,14 @@ public class FindReplaceDialog extends JDialog {
         });
 
         findField.addActionListener(e -> findNext()); // 处理 Enter 键
+        // Shift+Enter 查找上一个
+        findField.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, InputEvent.SHIFT_DOWN_MASK), "findPrevious");
+        findField.getActionMap().put("findPrevious", new AbstractAction() {
+            @Override
+            public void actionPerformed(java.awt.event.ActionEvent e) {
+                findPrevious();
+            }
+        });
 
         // 对话框打开时重置搜索
         addWindowListener(new java.awt.event.WindowAdapter() {
@@ -104,48 +193,223 @@ public class FindReplaceDialog extends JDialog {
         setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
     }
 
+    private void attachDocument(Document newDocument) {
+        detachDocument();
+        document = newDocument;
+        document.addDocumentListener(documentListener);
+        documentChanged(null);
+    }
+
+    private void detachDocument() {
+        if (document != null) {
+            document.removeDocumentListener(documentListener);
+            document = null;
+        }
+        documentVersion++;
+        invalidateIndex();
+    }
+
+    /**
+     * 文档被编辑：索引完整时就地更新，否则作废并重新查找
+     * @param e 插入或删除事件，文档被整个替换时为 null
+     */
+    private void documentChanged(DocumentEvent e) {
+        documentVersion++;
+        if (!SwingUtilities.isEventDispatchThread()) {
+            // 后台线程上的修改 (如加载) 不在此更新，回到 EDT 后重建
+            SwingUtilities.invokeLater(() -> documentChanged(null));
+            return;
+        }
+        if (e != null && indexComplete) {
+            try {
+                matchIndex.update(e.getDocument(), indexSearcher, e);
+                // 监听器中视图可能尚未更新，高亮稍后刷新
+                SwingUtilities.invokeLater(this::refreshVisibleHighlights);
+                return;
+            } catch (BadLocationException ex) {
+                ex.printStackTrace();
+            }
+        }
+        invalidateIndex();
+        if (isVisible() && !findField.getText().isEmpty()) {
+            searchTimer.restart();
+        }
+    }
+
+    private void invalidateIndex() {
+        matchIndex.clear();
+        indexComplete = false;
+        indexQuery = null;
+        indexSearcher = null;
+    }
+
+    /**
+     * @return 标识当前查询的字符串：模式、大小写和查找内容
+     */
+    private String queryKey() {
+        return (regexCheckBox.isSelected() ? 'R' : 'L') + "" + (matchCaseCheckBox.isSelected() ? 'C' : 'I')
+                + findField.getText();
+    }
+
+    /**
+     * 为当前查询创建查找器，查找内容不能为空。编译结果在查询不变时复用
+     * @throws PatternSyntaxException 正则表达式无效
+     */
+    private DocumentSearcher newSearcher() {
+        String query = queryKey();
+        if (!query.equals(cachedQuery)) {
+            String findText = findField.getText();
+            boolean matchCase = matchCaseCheckBox.isSelected();
+            if (regexCheckBox.isSelected()) {
+                cachedPattern = Pattern.compile(findText, matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+                cachedLiteral = null;
+            } else {
+                cachedLiteral = new LiteralSearcher(findText, !matchCase);
+                cachedPattern = null;
+            }
+            cachedQuery = query;
+        }
+        return cachedPattern != null ? new DocumentSearcher(cachedPattern) : new DocumentSearcher(cachedLiteral);
+    }
+
+    /**
+     * @return 索引是否对应查找框中的内容 (输入后尚未开始重建时为 false)
+     */
+    private boolean isIndexCurrent() {
+        return indexQuery != null && indexQuery.equals(queryKey());
+    }
+
     private void findNext() {
-        highlighter.removeAllHighlights();
         String findText = findField.getText();
         if (findText.isEmpty()) {
             statusLabel.setText("请输入查找内容");
             return;
         }
-        String content = textArea.getText();
         int searchFrom = (lastMatchIndex == -1) ? 0 : lastMatchIndex + 1;
 
-        if (searchFrom >= content.length()) {
-            searchFrom = 0; // 包含搜索
+        try {
+            int[] match = null;
+            if (isIndexCurrent()) {
+                int index = matchIndex.firstStartingAtOrAfter(searchFrom);
+                if (index < matchIndex.size()) {
+                    match = new int[]{matchIndex.getStart(index), matchIndex.getEnd(index)};
+                } else if (indexComplete && matchIndex.size() > 0) {
+                    // 到达末尾后回到第一个
+                    match = new int[]{matchIndex.getStart(0), matchIndex.getEnd(0)};
+                }
+            }
+            if (match == null && !(isIndexCurrent() && indexComplete)) {
+                // 索引尚未覆盖该位置，直接在文档上查找
+                DocumentSearcher searcher = newSearcher();
+                Document doc = textArea.getDocument();
+                match = searcher.findNext(doc, searchFrom);
+                if (match == null && searchFrom > 0) {
+                    match = searcher.findNext(doc, 0);
+                }
+            }
+            selectMatch(match);
+        } catch (PatternSyntaxException ex) {
+            statusLabel.setText("正则表达式错误");
+        } catch (BadLocationException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void findPrevious() {
+        String findText = findField.getText();
+        if (findText.isEmpty()) {
+            statusLabel.setText("请输入查找内容");
+            return;
         }
+        int searchBefore = (lastMatchIndex == -1) ? textArea.getDocument().getLength() + 1 : lastMatchIndex;
 
         try {
-            if (regexCheckBox.isSelected()) {
-                Pattern pattern = Pattern.compile(findText);
-                Matcher matcher = pattern.matcher(content);
-                if (matcher.find(searchFrom)) {
-                    highlightMatch(matcher.start(), matcher.end());
-                    lastMatchIndex = matcher.start();
-                } else if (lastMatchIndex != -1) { // 如果从当前位置未找到，则进行全局搜索
-                    lastMatchIndex = -1;
-                    findNext(); // 从头再来
-                } else {
-                    statusLabel.setText("未找到匹配项");
+            int[] match = null;
+            if (isIndexCurrent() && indexComplete) {
+                int index = matchIndex.lastStartingBefore(searchBefore);
+                if (index < 0) {
+                    // 到达开头后回到最后一个
+                    index = matchIndex.size() - 1;
+                }
+                if (index >= 0) {
+                    match = new int[]{matchIndex.getStart(index), matchIndex.getEnd(index)};
                 }
             } else {
-                int foundIndex = content.indexOf(findText, searchFrom);
-                if (foundIndex != -1) {
-                    highlightMatch(foundIndex, foundIndex + findText.length());
-                    lastMatchIndex = foundIndex;
-                } else if (lastMatchIndex != -1) { // Wrap search
-                    lastMatchIndex = -1;
-                    findNext();
-                } else {
-                    statusLabel.setText("未找到匹配项");
+                // 索引尚未完整，从已收集部分的末尾向后补查，没有时从文档末尾绕回
+                match = lastMatchBefore(searchBefore);
+                if (match == null) {
+                    match = lastMatchBefore(textArea.getDocument().getLength() + 1);
                 }
             }
+            selectMatch(match);
         } catch (PatternSyntaxException ex) {
             statusLabel.setText("正则表达式错误");
+        } catch (BadLocationException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * 在索引尚未完整时查找起点早于 offset 的最后一个匹配：索引中的匹配是文档开头的连续一段，
+     * 只需在其末尾到 offset 之间补查
+     */
+    private int[] lastMatchBefore(int offset) throws BadLocationException {
+        int[] found = null;
+        int from = 0;
+        if (isIndexCurrent() && matchIndex.size() > 0) {
+            int index = matchIndex.lastStartingBefore(offset);
+            if (index >= 0) {
+                found = new int[]{matchIndex.getStart(index), matchIndex.getEnd(index)};
+            }
+            from = matchIndex.getEnd(matchIndex.size() - 1);
+        }
+        int[] last = found;
+        if (from < offset) {
+            int[][] holder = {last};
+            newSearcher().findRange(textArea.getDocument(), from, offset, (start, end) -> {
+                if (start != end) {
+                    holder[0] = new int[]{start, end};
+                }
+                return true;
+            });
+            last = holder[0];
+        }
+        return last;
+    }
+
+    private void selectMatch(int[] match) {
+        if (match != null) {
+            highlightMatch(match[0], match[1]);
+            lastMatchIndex = match[0];
+            lastMatchEnd = match[1];
+            updateStatus();
+        } else {
+            lastMatchIndex = -1;
+            lastMatchEnd = -1;
+            statusLabel.setText("未找到匹配项");
+        }
+    }
+
+    /**
+     * 显示匹配总数和当前是第几个
+     */
+    private void updateStatus() {
+        String text;
+        if (!isIndexCurrent()) {
+            // 查找内容刚修改，索引即将重建
+            text = "正在查找...";
+        } else if (!indexComplete) {
+            text = "正在查找... 已找到 " + matchIndex.size() + " 个匹配项";
+        } else if (matchIndex.size() == 0) {
+            text = "未找到匹配项";
+        } else {
+            text = "找到 " + matchIndex.size() + " 个匹配项";
+            int index = lastMatchIndex < 0 ? -1 : matchIndex.indexOf(lastMatchIndex);
+            if (index >= 0) {
+                text = "第 " + (index + 1) + " / " + matchIndex.size() + " 个匹配项";
+            }
         }
+        statusLabel.setText(text);
     }
 
     private void replace() {
@@ -156,78 +420,277 @@ public class FindReplaceDialog extends JDialog {
             return;
         }
 
-        // 如果有匹配的选区，则替换它
-        String selectedText = textArea.getSelectedText();
-        if (selectedText != null && selectedText.equals(findText)) {
-            textArea.replaceSelection(replaceText);
+        // 如果选区正是当前匹配，则替换它，并从替换后的文本之后继续查找
+        int start = textArea.getSelectionStart();
+        int end = textArea.getSelectionEnd();
+        try {
+            String replacement = start < end ? replacementFor(start, end, replaceText) : null;
+            if (replacement != null) {
+                textArea.replaceSelection(replacement);
+                lastMatchIndex = start + replacement.length() - 1;
+            }
+        } catch (PatternSyntaxException ex) {
+            statusLabel.setText("正则表达式错误");
+            return;
+        } catch (BadLocationException ex) {
+            ex.printStackTrace();
         }
         findNext();
     }
 
+    /**
+     * @return 选区 [start, end) 恰好是一个匹配时应替换成的文本，否则返回 null
+     */
+    private String replacementFor(int start, int end, String replaceText) throws BadLocationException {
+        DocumentSearcher searcher = newSearcher();
+        String[] replacement = new String[1];
+        searcher.findRange(textArea.getDocument(), start, start + 1, (matchStart, matchEnd) -> {
+            if (matchStart == start && matchEnd == end) {
+                replacement[0] = searcher.expandReplacement(replaceText);
+            }
+            return false;
+        });
+        return replacement[0];
+    }
+
     private void replaceAll() {
-        highlighter.removeAllHighlights();
         String findText = findField.getText();
         String replaceText = replaceField.getText();
         if (findText.isEmpty()) {
             statusLabel.setText("请输入查找内容");
             return;
         }
+        if (!textArea.isEditable()) {
+            // 只读或正在保存 (保存期间持有文档读锁，直接修改文档会在 EDT 上等待写锁)
+            statusLabel.setText("文档当前不可编辑，无法替换");
+            return;
+        }
+        cancelSearch();
+        clearHighlights();
+        invalidateIndex();
+        lastMatchIndex = -1;
+        lastMatchEnd = -1;
 
+        Document doc = textArea.getDocument();
         try {
-            String content = textArea.getText();
-            String newContent;
-            if (regexCheckBox.isSelected()) {
-                Pattern pattern = Pattern.compile(findText);
-                newContent = pattern.matcher(content).replaceAll(replaceText);
-            } else {
-                newContent = content.replace(findText, replaceText);
+            // 先收集全部匹配和替换文本，再修改文档
+            DocumentSearcher searcher = newSearcher();
+            boolean regex = regexCheckBox.isSelected();
+            MatchIndex matches = new MatchIndex();
+            List<String> replacements = new ArrayList<>();
+            searcher.findRange(doc, 0, doc.getLength(), (start, end) -> {
+                if (start != end) {
+                    matches.add(start, end);
+                    if (regex) {
+                        replacements.add(searcher.expandReplacement(replaceText));
+                    }
+                }
+                return true;
+            });
+            if (matches.size() == 0) {
+                statusLabel.setText("未找到可替换的匹配项");
+                return;
             }
 
-            if (!content.equals(newContent)) {
-                textArea.setText(newContent);
-                statusLabel.setText("已完成全部替换");
-            } else {
-                statusLabel.setText("未找到可替换的匹配项");
+            beginReplaceAll();
+            try {
+                // 从后向前替换，尚未处理的匹配偏移不变
+                for (int i = matches.size() - 1; i >= 0; i--) {
+                    int start = matches.getStart(i);
+                    doc.remove(start, matches.getEnd(i) - start);
+                    doc.insertString(start, regex ? replacements.get(i) : replaceText, null);
+                }
+            } finally {
+                endReplaceAll();
             }
+            statusLabel.setText("已替换 " + matches.size() + " 处");
         } catch (PatternSyntaxException ex) {
             statusLabel.setText("正则表达式错误");
+        } catch (BadLocationException ex) {
+            ex.printStackTrace();
+            statusLabel.setText("替换失败: " + ex.getMessage());
         }
-        lastMatchIndex = -1;
     }
 
+    /**
+     * 全部替换开始：RTextArea 合并为一次撤销，其他编辑器通过 REPLACE_ALL_PROPERTY 得知
+     */
+    private void beginReplaceAll() {
+        if (textArea instanceof RTextArea) {
+            ((RTextArea) textArea).beginAtomicEdit();
+        }
+        textArea.putClientProperty(REPLACE_ALL_PROPERTY, Boolean.TRUE);
+    }
+
+    private void endReplaceAll() {
+        textArea.putClientProperty(REPLACE_ALL_PROPERTY, null);
+        if (textArea instanceof RTextArea) {
+            ((RTextArea) textArea).endAtomicEdit();
+        }
+    }
+
+    /**
+     * 取消正在进行的查找，在后台重新建立匹配索引，匹配逐批加入
+     */
     private void updateOccurrenceCount() {
-        highlighter.removeAllHighlights();
-        lastMatchIndex = -1;
+        cancelSearch();
+        clearMatchHighlights();
+        invalidateIndex();
         String findText = findField.getText();
+        if (findText.isEmpty() || !queryKey().equals(cachedQuery)) {
+            // 查找内容变化后从头查找；只是文档被编辑 (如替换) 时保留当前位置
+            clearCurrentHighlight();
+            lastMatchIndex = -1;
+            lastMatchEnd = -1;
+        }
         if (findText.isEmpty()) {
             statusLabel.setText(" ");
             return;
         }
 
-        String content = textArea.getText();
-        int count = 0;
+        DocumentSearcher searcher;
+        DocumentSearcher editSearcher;
         try {
-            if (regexCheckBox.isSelected()) {
-                Pattern pattern = Pattern.compile(findText);
-                Matcher matcher = pattern.matcher(content);
-                while (matcher.find()) {
-                    count++;
+            searcher = newSearcher();
+            editSearcher = newSearcher();
+        } catch (PatternSyntaxException ex) {
+            statusLabel.setText("正则表达式错误");
+            return;
+        }
+        Document doc = textArea.getDocument();
+        int version = documentVersion;
+        indexQuery = queryKey();
+        statusLabel.setText("正在查找...");
+
+        searchWorker = new SwingWorker<Integer, int[]>() {
+            @Override
+            protected Integer doInBackground() {
+                int[] batch = new int[MATCH_BATCH_SIZE * 2];
+                int[] size = {0};
+                boolean finished = searcher.findAll(doc, (start, end) -> {
+                    batch[size[0]++] = start;
+                    batch[size[0]++] = end;
+                    if (size[0] == batch.length) {
+                        publish(batch.clone());
+                        size[0] = 0;
+                    }
+                    return true;
+                }, () -> isCancelled() || documentVersion != version);
+                if (!finished) {
+                    return -1;
                 }
-            } else {
-                int index = -1;
-                while ((index = content.indexOf(findText, index + 1)) != -1) {
-                    count++;
+                if (size[0] > 0) {
+                    publish(Arrays.copyOf(batch, size[0]));
                 }
+                return 0;
             }
-            statusLabel.setText("找到 " + count + " 个匹配项");
-        } catch (PatternSyntaxException ex) {
-            statusLabel.setText("正则表达式错误");
+
+            @Override
+            protected void process(List<int[]> chunks) {
+                if (searchWorker != this || documentVersion != version) {
+                    return;
+                }
+                for (int[] matches : chunks) {
+                    for (int i = 0; i < matches.length; i += 2) {
+                        matchIndex.add(matches[i], matches[i + 1]);
+                    }
+                }
+                refreshVisibleHighlights();
+                updateStatus();
+            }
+
+            @Override
+            protected void done() {
+                if (searchWorker != this || isCancelled()) {
+                    return;
+                }
+                try {
+                    if (get() < 0 || documentVersion != version) {
+                        // 文档在查找期间被修改，documentChanged 已安排重新查找
+                        return;
+                    }
+                    indexComplete = true;
+                    indexSearcher = editSearcher;
+                    refreshVisibleHighlights();
+                    updateStatus();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    statusLabel.setText("查找失败: " + e.getMessage());
+                }
+            }
+        };
+        searchWorker.execute();
+    }
+
+    private void cancelSearch() {
+        if (searchWorker != null) {
+            searchWorker.cancel(true);
+            searchWorker = null;
+        }
+    }
+
+    /**
+     * 只为可见区域内的匹配添加高亮：先二分找到与可见区域相交的第一个匹配，再顺序添加到区域末尾
+     */
+    private void refreshVisibleHighlights() {
+        clearMatchHighlights();
+        if (matchIndex.size() == 0 || !textArea.isShowing()) {
+            return;
+        }
+        Rectangle visible = textArea.getVisibleRect();
+        int from = textArea.viewToModel2D(new Point(visible.x, visible.y));
+        int to = textArea.viewToModel2D(new Point(visible.x + visible.width, visible.y + visible.height));
+        try {
+            // 横向滚动时可见区域的角落落在行中间，扩展到整行
+            from = textArea.getLineStartOffset(textArea.getLineOfOffset(Math.max(0, from)));
+            to = textArea.getLineEndOffset(textArea.getLineOfOffset(Math.max(0, to)));
+            for (int i = matchIndex.firstEndingAfter(from); i < matchIndex.size() && matchIndex.getStart(i) < to
+                    && matchHighlights.size() < MAX_VISIBLE_HIGHLIGHTS; i++) {
+                matchHighlights.add(highlighter.addHighlight(matchIndex.getStart(i), matchIndex.getEnd(i), matchPainter));
+            }
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void attachViewport() {
+        detachViewport();
+        viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, textArea);
+        if (viewport != null) {
+            viewport.addChangeListener(viewportListener);
+        }
+    }
+
+    private void detachViewport() {
+        if (viewport != null) {
+            viewport.removeChangeListener(viewportListener);
+            viewport = null;
+        }
+    }
+
+    private void clearHighlights() {
+        clearMatchHighlights();
+        clearCurrentHighlight();
+    }
+
+    private void clearMatchHighlights() {
+        for (Object tag : matchHighlights) {
+            highlighter.removeHighlight(tag);
+        }
+        matchHighlights.clear();
+    }
+
+    private void clearCurrentHighlight() {
+        if (currentHighlight != null) {
+            highlighter.removeHighlight(currentHighlight);
+            currentHighlight = null;
         }
     }
 
     private void highlightMatch(int start, int end) {
+        clearCurrentHighlight();
         try {
-            highlighter.addHighlight(start, end, painter);
+            currentHighlight = highlighter.addHighlight(start, end, painter);
             textArea.setCaretPosition(start);
             textArea.moveCaretPosition(end);
         } catch (BadLocationException e) {
@@ -236,8 +699,11 @@ public class FindReplaceDialog extends JDialog {
     }
 
     private void resetSearch() {
-        highlighter.removeAllHighlights();
+        searchTimer.stop();
+        cancelSearch();
+        clearHighlights();
         lastMatchIndex = -1;
+        lastMatchEnd = -1;
     }
 
     @Override
@@ -245,12 +711,24 @@ public class FindReplaceDialog extends JDialog {
         if (b) {
             // 每次显示对话框时，重置搜索索引
             lastMatchIndex = -1;
+            attachDocument(textArea.getDocument());
+            attachViewport();
             // 并更新查找字段中当前文本的计数
             updateOccurrenceCount();
         } else {
             // 隐藏时，移除所有高亮显示
             resetSearch();
+            detachDocument();
+            detachViewport();
         }
         super.setVisible(b);
     }
+
+    @Override
+    public void dispose() {
+        resetSearch();
+        detachDocument();
+        detachViewport();
+        super.dispose();
+    }
 }
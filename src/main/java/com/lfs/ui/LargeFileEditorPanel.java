@@ -1,48 +1,107 @@
 package com.lfs.ui;
 
+import com.lfs.service.FileProcessorService;
+import com.lfs.util.ChunkedDocument;
+import com.lfs.util.ChunkedTextDecoder;
+import com.lfs.util.EditorFeaturePolicy;
+import com.lfs.util.IncrementalSyntaxDocument;
 import com.lfs.util.NotificationUtil;
+import org.fife.ui.rsyntaxtextarea.RSyntaxDocument;
 import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
 import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
 import org.fife.ui.rtextarea.RTextScrollPane;
 
 import javax.swing.*;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.Document;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoManager;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
+import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 public class LargeFileEditorPanel extends JPanel {
 
-    private final RSyntaxTextArea textArea;
+    // 每次读取并解码 1 MB
+    private static final int LOAD_CHUNK_SIZE = 1 << 20;
+    // 超过该大小的文件使用分块文档，不做语法高亮
+    private static final long CHUNKED_DOCUMENT_THRESHOLD = 32L << 20;
+    private static final String SYNTAX_CARD = "syntax";
+    private static final String CHUNKED_CARD = "chunked";
+
+    private final RSyntaxTextArea syntaxArea;
+    // RTextArea 只接受 RDocument，分块文档用普通 JTextArea 显示
+    private final JTextArea chunkedArea;
+    private final UndoManager chunkedUndoManager = new UndoManager();
+    // 全部替换期间收集修改，结束后作为一次撤销加入 chunkedUndoManager
+    private CompoundEdit chunkedReplaceAllEdit;
+    private final UndoableEditListener chunkedUndoListener = e -> {
+        if (chunkedReplaceAllEdit != null) {
+            chunkedReplaceAllEdit.addEdit(e.getEdit());
+        } else {
+            chunkedUndoManager.addEdit(e.getEdit());
+        }
+    };
+    private final CardLayout editorLayout = new CardLayout();
+    private final JPanel editorCards = new JPanel(editorLayout);
+    // 当前显示的文本框
+    private JTextArea textArea;
     private final JProgressBar progressBar;
     private final JLabel statusLabel;
     private File currentFile;
     private FindReplaceDialog findReplaceDialog;
+    private SwingWorker<AbstractDocument, Integer> loadWorker;
+    private final FileProcessorService fileProcessorService = new FileProcessorService();
+    private boolean saving;
+    // 按扩展名得到的高亮样式，高亮被降级时不会应用到文本框
+    private String syntaxStyle = SyntaxConstants.SYNTAX_STYLE_NONE;
+    private final FeatureDegradationBanner degradationBanner;
 
     public LargeFileEditorPanel() {
         super(new BorderLayout());
-        textArea = new RSyntaxTextArea();
-        textArea.setEditable(false); // 最初不可编辑
-        textArea.setCodeFoldingEnabled(true);
-        textArea.setAntiAliasingEnabled(true);
+        syntaxArea = new RSyntaxTextArea(new IncrementalSyntaxDocument(SyntaxConstants.SYNTAX_STYLE_NONE));
+        syntaxArea.setEditable(false); // 最初不可编辑
+        syntaxArea.setCodeFoldingEnabled(true);
+        syntaxArea.setAntiAliasingEnabled(true);
 
         try {
             java.io.InputStream in = getClass().getResourceAsStream("/org/fife/ui/rsyntaxtextarea/themes/dark.xml");
             org.fife.ui.rsyntaxtextarea.Theme theme = org.fife.ui.rsyntaxtextarea.Theme.load(in);
-            theme.apply(textArea);
+            theme.apply(syntaxArea);
         } catch (java.io.IOException e) {
             e.printStackTrace();
         }
 
-        RTextScrollPane scrollPane = new RTextScrollPane(textArea);
+        RTextScrollPane scrollPane = new RTextScrollPane(syntaxArea);
         scrollPane.setLineNumbersEnabled(true);
-        add(scrollPane, BorderLayout.CENTER);
+        editorCards.add(scrollPane, SYNTAX_CARD);
+
+        // 分块文档的文本框沿用主题的颜色和字体
+        chunkedArea = new JTextArea(new ChunkedDocument());
+        chunkedArea.setEditable(false);
+        chunkedArea.setFont(syntaxArea.getFont());
+        chunkedArea.setBackground(syntaxArea.getBackground());
+        chunkedArea.setForeground(syntaxArea.getForeground());
+        chunkedArea.setCaretColor(syntaxArea.getCaretColor());
+        chunkedArea.setSelectionColor(syntaxArea.getSelectionColor());
+        chunkedArea.setSelectedTextColor(syntaxArea.getSelectedTextColor());
+        chunkedArea.setTabSize(syntaxArea.getTabSize());
+        chunkedArea.getDocument().addUndoableEditListener(chunkedUndoListener);
+        editorCards.add(new JScrollPane(chunkedArea), CHUNKED_CARD);
+
+        textArea = syntaxArea;
+        degradationBanner = new FeatureDegradationBanner(this::enableAllFeatures);
+        add(degradationBanner, BorderLayout.NORTH);
+        add(editorCards, BorderLayout.CENTER);
 
         JPanel statusPanel = new JPanel(new BorderLayout());
         progressBar = new JProgressBar();
@@ -53,12 +112,14 @@ public class LargeFileEditorPanel extends JPanel {
         statusPanel.add(statusLabel, BorderLayout.CENTER);
         add(statusPanel, BorderLayout.SOUTH);
 
-        setupShortcuts();
+        setupShortcuts(syntaxArea);
+        setupShortcuts(chunkedArea);
+        setupChunkedUndo();
     }
 
-    private void setupShortcuts() {
-        InputMap inputMap = textArea.getInputMap(JComponent.WHEN_FOCUSED);
-        ActionMap actionMap = textArea.getActionMap();
+    private void setupShortcuts(JTextArea area) {
+        InputMap inputMap = area.getInputMap(JComponent.WHEN_FOCUSED);
+        ActionMap actionMap = area.getActionMap();
 
         // Save: Command/Control + S
         KeyStroke saveKeyStroke = KeyStroke.getKeyStroke(KeyEvent.VK_S, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx());
@@ -86,59 +147,174 @@ public class LargeFileEditorPanel extends JPanel {
             }
         });
 
-        // 撤销/重做由 RSyntaxTextArea 的默认键映射处理
+        // RSyntaxTextArea 的撤销/重做由其默认键映射处理
+    }
+
+    /**
+     * 分块文档的撤销/重做: Command/Control + Z, Command/Control + Y
+     */
+    private void setupChunkedUndo() {
+        chunkedArea.addPropertyChangeListener(FindReplaceDialog.REPLACE_ALL_PROPERTY, e -> {
+            if (Boolean.TRUE.equals(e.getNewValue())) {
+                chunkedReplaceAllEdit = new CompoundEdit();
+            } else if (chunkedReplaceAllEdit != null) {
+                chunkedReplaceAllEdit.end();
+                chunkedUndoManager.addEdit(chunkedReplaceAllEdit);
+                chunkedReplaceAllEdit = null;
+            }
+        });
+
+        InputMap inputMap = chunkedArea.getInputMap(JComponent.WHEN_FOCUSED);
+        ActionMap actionMap = chunkedArea.getActionMap();
+        int shortcutMask = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcutMask), "undo");
+        actionMap.put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                // 保存期间文本框不可编辑，此时撤销会在 EDT 上等待文档写锁
+                if (!chunkedArea.isEditable()) {
+                    return;
+                }
+                try {
+                    if (chunkedUndoManager.canUndo()) {
+                        chunkedUndoManager.undo();
+                    }
+                } catch (CannotUndoException ex) {
+                    // 忽略
+                }
+            }
+        });
+
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, shortcutMask), "redo");
+        actionMap.put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                // 同上
+                if (!chunkedArea.isEditable()) {
+                    return;
+                }
+                try {
+                    if (chunkedUndoManager.canRedo()) {
+                        chunkedUndoManager.redo();
+                    }
+                } catch (CannotRedoException ex) {
+                    // 忽略
+                }
+            }
+        });
+    }
+
+    /**
+     * 切换当前显示的文本框，查找对话框绑定在文本框上，切换后重新创建
+     */
+    private void showArea(JTextArea area) {
+        if (textArea == area) {
+            return;
+        }
+        textArea = area;
+        editorLayout.show(editorCards, area == syntaxArea ? SYNTAX_CARD : CHUNKED_CARD);
+        if (findReplaceDialog != null) {
+            findReplaceDialog.dispose();
+            findReplaceDialog = null;
+        }
     }
 
+    /**
+     * 在后台把整个文件解码到一个尚未显示的新文档中，完成后一次性替换文本框的文档。
+     * 加载期间不触发界面重排，耗时只取决于磁盘读取和解码。
+     * 超过 CHUNKED_DOCUMENT_THRESHOLD 的文件加载到 ChunkedDocument，行结构不占内存，编辑只复制所在的分块；
+     * 其余文件在解码时统计行数和行长，按 EditorFeaturePolicy 关闭开销大的功能后再显示
+     *
+     * @param file 要打开的文件
+     */
     public void loadFile(File file) {
+        if (loadWorker != null) {
+            loadWorker.cancel(true);
+        }
         setCurrentFile(file);
-        textArea.discardAllEdits();
-        textArea.setText(""); // Clear previous content
+        String syntaxStyle = this.syntaxStyle;
+        boolean chunked = file.length() >= CHUNKED_DOCUMENT_THRESHOLD;
+        // 先换上空文档释放旧内容，避免旧文档在加载期间被重新着色
+        syntaxArea.setDocument(new IncrementalSyntaxDocument(syntaxStyle));
+        syntaxArea.setEditable(false);
+        setChunkedDocument(new ChunkedDocument());
+        chunkedArea.setEditable(false);
+        showArea(chunked ? chunkedArea : syntaxArea);
+        degradationBanner.setVisible(false);
+        EditorFeaturePolicy.TextStats stats = new EditorFeaturePolicy.TextStats();
         statusLabel.setText("正在加载 " + file.getName() + "...");
         progressBar.setValue(0);
         progressBar.setVisible(true);
-        long length = file.length();
-
-        // 缓冲区大小上限为32KB，以防止长时间阻塞UI更新。
-        final int MIN_BUFFER_SIZE = 4 * 1024; // 4KB
-        final int MAX_BUFFER_SIZE = 32 * 1024; // 32KB
-        int bufferSize = (int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, length / 200));
-        final byte[] buffer = new byte[bufferSize];
-
-        // 短暂延迟以让出UI线程。
-        final long sleep = 2L;
         setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 
-        new SwingWorker<Void, ProgressChunk>() {
+        loadWorker = new SwingWorker<AbstractDocument, Integer>() {
             @Override
-            protected Void doInBackground() throws Exception {
+            protected AbstractDocument doInBackground() throws Exception {
+                // 文档还没有交给任何组件，可以在后台线程上直接写入
+                AbstractDocument document = chunked ? new ChunkedDocument() : new IncrementalSyntaxDocument(syntaxStyle);
                 long fileLength = file.length();
+                byte[] buffer = new byte[LOAD_CHUNK_SIZE];
+                ChunkedTextDecoder decoder = new ChunkedTextDecoder(StandardCharsets.UTF_8, LOAD_CHUNK_SIZE);
                 try (InputStream in = new FileInputStream(file)) {
                     int bytesRead;
                     long totalBytesRead = 0;
-                    while ((bytesRead = in.read(buffer)) != -1) {
-                        String chunk = new String(buffer, 0, bytesRead, StandardCharsets.UTF_8);
+                    int lastProgress = -1;
+                    while ((bytesRead = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                        if (isCancelled()) {
+                            return null;
+                        }
+                        // 被块边界截断的多字节字符由解码器留到下一块
+                        CharBuffer chars = decoder.decode(buffer, 0, bytesRead);
+                        stats.accept(chars);
+                        document.insertString(document.getLength(), chars.toString(), null);
                         totalBytesRead += bytesRead;
-                        int progress = (int) ((totalBytesRead * 100) / fileLength);
-                        publish(new ProgressChunk(chunk, progress));
-                        Thread.sleep(sleep);
+                        int progress = fileLength == 0 ? 100 : (int) (totalBytesRead * 100 / fileLength);
+                        if (progress != lastProgress) {
+                            lastProgress = progress;
+                            publish(progress);
+                        }
                     }
+                    CharBuffer chars = decoder.finish();
+                    stats.accept(chars);
+                    document.insertString(document.getLength(), chars.toString(), null);
                 }
-                return null;
+                return document;
             }
 
             @Override
-            protected void process(List<ProgressChunk> chunks) {
-                for (ProgressChunk chunk : chunks) {
-                    // 追加到 RSyntaxTextArea 应该会更快
-                    textArea.append(chunk.getText());
-                    progressBar.setValue(chunk.getProgress());
+            protected void process(List<Integer> chunks) {
+                if (!isCancelled()) {
+                    progressBar.setValue(chunks.get(chunks.size() - 1));
                 }
             }
 
             @Override
             protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
                 try {
-                    get(); // 检查异常
+                    AbstractDocument document = get();
+                    if (chunked) {
+                        setChunkedDocument(document);
+                        degradationBanner.showMessage("文件超过 " + (CHUNKED_DOCUMENT_THRESHOLD >> 20)
+                                + " MB，以纯文本模式打开，不支持语法高亮、代码折叠、括号匹配和行号", false);
+                    } else {
+                        // 在文档交给文本框之前关闭功能，避免先按完整功能解析一遍
+                        EditorFeaturePolicy.Decision decision = EditorFeaturePolicy.decide(stats);
+                        applyFeatures(decision);
+                        if (!decision.isEnabled(EditorFeaturePolicy.Feature.HIGHLIGHTING)) {
+                            ((RSyntaxDocument) document).setSyntaxStyle(SyntaxConstants.SYNTAX_STYLE_NONE);
+                        }
+                        syntaxArea.setDocument(document);
+                        // 加载时在后台线程插入的行，交给文本框后才开始计算行尾状态
+                        ((IncrementalSyntaxDocument) document).resumeHighlighting();
+                        syntaxArea.discardAllEdits();
+                        if (decision.isDegraded()) {
+                            degradationBanner.showMessage(decision.describe(), true);
+                        }
+                    }
                     textArea.setEditable(true);
                     textArea.setCaretPosition(0); // 将光标移动到开头
                     statusLabel.setText("加载完成: " + file.getName());
@@ -151,43 +327,82 @@ public class LargeFileEditorPanel extends JPanel {
                     progressBar.setVisible(false);
                 }
             }
-        }.execute();
+        };
+        loadWorker.execute();
+    }
+
+    private void applyFeatures(EditorFeaturePolicy.Decision decision) {
+        syntaxArea.setSyntaxEditingStyle(decision.isEnabled(EditorFeaturePolicy.Feature.HIGHLIGHTING)
+                ? syntaxStyle : SyntaxConstants.SYNTAX_STYLE_NONE);
+        syntaxArea.setCodeFoldingEnabled(decision.isEnabled(EditorFeaturePolicy.Feature.FOLDING));
+        syntaxArea.setBracketMatchingEnabled(decision.isEnabled(EditorFeaturePolicy.Feature.BRACKET_MATCHING));
+    }
+
+    /**
+     * 用户选择仍然启用被降级的功能，只对当前文件有效，打开下一个文件时重新判断
+     */
+    private void enableAllFeatures() {
+        syntaxArea.setSyntaxEditingStyle(syntaxStyle);
+        syntaxArea.setCodeFoldingEnabled(true);
+        syntaxArea.setBracketMatchingEnabled(true);
+    }
+
+    private void setChunkedDocument(Document document) {
+        chunkedArea.getDocument().removeUndoableEditListener(chunkedUndoListener);
+        chunkedArea.setDocument(document);
+        document.addUndoableEditListener(chunkedUndoListener);
+        chunkedUndoManager.discardAllEdits();
     }
 
-    public RSyntaxTextArea getTextArea() {
+    /**
+     * @return 当前显示的文本框
+     */
+    public JTextArea getTextArea() {
         return textArea;
     }
 
+    /**
+     * 在后台把文档流式写回文件，保存期间文本框只读
+     */
     public void saveFile() {
         if (currentFile == null) {
             NotificationUtil.showErrorDialog(this, "没有要保存的文件。");
             return;
         }
-
+        if (loadWorker != null && !loadWorker.isDone()) {
+            NotificationUtil.showToast(this, "文件仍在加载，请稍后再保存");
+            return;
+        }
+        if (saving) {
+            return;
+        }
+        saving = true;
+        File file = currentFile;
+        Document document = textArea.getDocument();
+        textArea.setEditable(false);
         setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-        statusLabel.setText("正在保存 " + currentFile.getName() + "...");
+        statusLabel.setText("正在保存 " + file.getName() + "...");
 
         new SwingWorker<Void, Void>() {
             @Override
             protected Void doInBackground() throws Exception {
-                try (OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(currentFile), StandardCharsets.UTF_8)) {
-                    // 对于大文件来说，这可能会很慢，但保存操作预计会花费一些时间。
-                    writer.write(textArea.getText());
-                }
+                fileProcessorService.saveDocument(file, document);
                 return null;
             }
 
             @Override
             protected void done() {
+                saving = false;
                 try {
                     get();
-                    statusLabel.setText("文件已保存: " + currentFile.getName());
+                    statusLabel.setText("文件已保存: " + file.getName());
                     NotificationUtil.showSaveSuccess(LargeFileEditorPanel.this);
                 } catch (Exception e) {
                     e.printStackTrace();
                     statusLabel.setText("保存失败: " + e.getMessage());
                     NotificationUtil.showErrorDialog(LargeFileEditorPanel.this, "保存文件失败: " + e.getMessage());
                 } finally {
+                    textArea.setEditable(true);
                     setCursor(Cursor.getDefaultCursor());
                 }
             }
@@ -216,68 +431,50 @@ public class LargeFileEditorPanel extends JPanel {
     private void setSyntaxStyle(String extension) {
         switch (extension.toLowerCase()) {
             case "java":
-                textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_JAVA);
+                syntaxStyle = SyntaxConstants.SYNTAX_STYLE_JAVA;
                 break;
             case "py":
-                textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_PYTHON);
+                syntaxStyle = SyntaxConstants.SYNTAX_STYLE_PYTHON;
                 break;
             case "js":
-                textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_JAVASCRIPT);
+                syntaxStyle = SyntaxConstants.SYNTAX_STYLE_JAVASCRIPT;
                 break;
             case "ts":
-                textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_TYPESCRIPT);
+                syntaxStyle = SyntaxConstants.SYNTAX_STYLE_TYPESCRIPT;
                 break;
             case "html":
             case "htm":
-                textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_HTML);
+                syntaxStyle = SyntaxConstants.SYNTAX_STYLE_HTML;
                 break;
             case "css":
-                textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_CSS);
+                syntaxStyle = SyntaxConstants.SYNTAX_STYLE_CSS;
                 break;
             case "xml":
-                textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_XML);
+                syntaxStyle = SyntaxConstants.SYNTAX_STYLE_XML;
                 break;
             case "json":
-                textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_JSON);
+                syntaxStyle = SyntaxConstants.SYNTAX_STYLE_JSON;
                 break;
             case "sql":
-                textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_SQL);
+                syntaxStyle = SyntaxConstants.SYNTAX_STYLE_SQL;
                 break;
             case "md":
-                textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_MARKDOWN);
+                syntaxStyle = SyntaxConstants.SYNTAX_STYLE_MARKDOWN;
                 break;
             case "sh":
-                textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_UNIX_SHELL);
+                syntaxStyle = SyntaxConstants.SYNTAX_STYLE_UNIX_SHELL;
                 break;
             case "bat":
-                textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_WINDOWS_BATCH);
+                syntaxStyle = SyntaxConstants.SYNTAX_STYLE_WINDOWS_BATCH;
                 break;
             case "yaml":
             case "yml":
-                textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_YAML);
+                syntaxStyle = SyntaxConstants.SYNTAX_STYLE_YAML;
                 break;
             default:
-                textArea.setSyntaxEditingStyle(SyntaxConstants.SYNTAX_STYLE_NONE);
+                syntaxStyle = SyntaxConstants.SYNTAX_STYLE_NONE;
                 break;
         }
+        syntaxArea.setSyntaxEditingStyle(syntaxStyle);
     }
 }
-
-// 用于发布文本块和进度的辅助类
-class ProgressChunk {
-    private final String text;
-    private final int progress;
-
-    public ProgressChunk(String text, int progress) {
-        this.text = text;
-        this.progress = progress;
-    }
-
-    public String getText() {
-        return text;
-    }
-
-    public int getProgress() {
-        return progress;
-    }
-}
\ No newline at end of file
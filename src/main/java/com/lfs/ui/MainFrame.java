@@ -3,8 +3,12 @@ package com.lfs.ui;
 import cn.hutool.db.sql.SqlUtil;
 import cn.hutool.json.JSONUtil;
 import com.lfs.domain.ContentResponse;
+import com.lfs.service.CircuitBreaker;
+import com.lfs.service.CloudSyncManager;
+import com.lfs.service.HttpClientService;
 import com.lfs.service.JavaToJsonService;
 import com.lfs.service.JsonToJavaService;
+import com.lfs.service.LocalReplicaService;
 import com.lfs.service.UserPreferencesService;
 import com.lfs.util.NotificationUtil;
 
@@ -14,6 +18,7 @@ import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
+import java.io.IOException;
 
 /**
  * 主框架显示UI
@@ -30,6 +35,8 @@ public class MainFrame extends JFrame {
     private JMenuItem signupMenuItem;
     private JMenuItem changePasswordMenuItem;
     private JCheckBoxMenuItem lineWrapMenuItem;
+    private JLabel pendingWritesLabel;
+    private JLabel connectionStateLabel;
 
     public MainFrame() {
         this.preferencesService = new UserPreferencesService();
@@ -50,6 +57,10 @@ public class MainFrame extends JFrame {
 
     public void updateAccountMenu() {
         boolean isLoggedIn = preferencesService.getToken() != null;
+        if (isLoggedIn) {
+            // 登录后继续上传离线期间积压的保存
+            CloudSyncManager.flushNow();
+        }
         loginMenuItem.setVisible(!isLoggedIn);
         logoutMenuItem.setVisible(isLoggedIn);
         signupMenuItem.setVisible(!isLoggedIn);
@@ -280,9 +291,15 @@ public class MainFrame extends JFrame {
 
         logoutMenuItem = new JMenuItem("登出...");
         logoutMenuItem.addActionListener(e -> {
-            int response = JOptionPane.showConfirmDialog(this, "您确定要登出吗？", "确认", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+            int pendingCount = CloudSyncManager.getPendingCount();
+            String message = pendingCount > 0
+                    ? "还有 " + pendingCount + " 个云端文件尚未同步，登出将丢弃这些修改。\n您确定要登出吗？"
+                    : "您确定要登出吗？";
+            int response = JOptionPane.showConfirmDialog(this, message, "确认", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
             if (response == JOptionPane.YES_OPTION) {
                 preferencesService.clearToken();
+                CloudSyncManager.discardAll();
+                new LocalReplicaService().clear();
                 updateAccountMenu();
                 // 登出后切换回本地选项卡
                 if (fileExplorerPanel != null) {
@@ -303,6 +320,22 @@ public class MainFrame extends JFrame {
         menuBar.add(sqlMenu);
         menuBar.add(accountMenu);
 
+        // --- 待同步写入指示器 ---
+        pendingWritesLabel = new JLabel();
+        pendingWritesLabel.setBorder(BorderFactory.createEmptyBorder(0, 5, 0, 10));
+        pendingWritesLabel.setVisible(false);
+        menuBar.add(Box.createHorizontalGlue());
+        menuBar.add(pendingWritesLabel);
+        CloudSyncManager.addPendingWritesListener(this::updatePendingWritesIndicator);
+        updatePendingWritesIndicator(CloudSyncManager.getPendingCount());
+
+        // --- 云端连接状态指示器 (熔断器) ---
+        connectionStateLabel = new JLabel();
+        connectionStateLabel.setBorder(BorderFactory.createEmptyBorder(0, 5, 0, 10));
+        menuBar.add(connectionStateLabel);
+        HttpClientService.addCircuitStateListener(this::updateConnectionStateIndicator);
+        updateConnectionStateIndicator(HttpClientService.getCircuitState());
+
         rightPanel.add(menuBar, BorderLayout.NORTH);
         rightPanel.add(tabbedPane, BorderLayout.CENTER);
 
@@ -324,6 +357,23 @@ public class MainFrame extends JFrame {
         });
     }
 
+    private void updatePendingWritesIndicator(int pendingCount) {
+        pendingWritesLabel.setVisible(pendingCount > 0);
+        pendingWritesLabel.setText("☁ " + pendingCount + " 个文件待同步");
+        pendingWritesLabel.setToolTipText("已保存在本地，正在后台上传到云端");
+    }
+
+    private void updateConnectionStateIndicator(CircuitBreaker.State state) {
+        connectionStateLabel.setVisible(state != CircuitBreaker.State.CLOSED);
+        if (state == CircuitBreaker.State.OPEN) {
+            connectionStateLabel.setText("⚠ 云端连接中断");
+            connectionStateLabel.setToolTipText("后端暂时不可用，请求会直接失败，稍后自动重试");
+        } else {
+            connectionStateLabel.setText("⚠ 正在重新连接云端");
+            connectionStateLabel.setToolTipText("正在试探后端是否已恢复");
+        }
+    }
+
     public FileExplorerPanel getFileExplorerPanel() {
         return fileExplorerPanel;
     }
@@ -352,6 +402,23 @@ public class MainFrame extends JFrame {
     }
 
     public void openFileInTabReadOnly(File file) {
+        openFileInTabReadOnly(file, file.getName());
+    }
+
+    public void openFileInTabReadOnly(File file, String title) {
+        openVirtualTab(file, title, false);
+    }
+
+    /**
+     * 用只读查看器打开云端文档的本地副本，在这里保存不会同步到云端，因此禁止编辑
+     * @param file  本地副本
+     * @param title 选项卡标题
+     */
+    public void openCloudReplicaInTab(File file, String title) {
+        openVirtualTab(file, title, true);
+    }
+
+    private void openVirtualTab(File file, String title, boolean readOnly) {
         // 检查是否已经打开
         for (int i = 0; i < tabbedPane.getTabCount(); i++) {
             Component tabComponent = tabbedPane.getComponentAt(i);
@@ -366,10 +433,25 @@ public class MainFrame extends JFrame {
 
         // 创建新的 VirtualEditorPanel
         VirtualEditorPanel newEditorPanel = new VirtualEditorPanel();
+        newEditorPanel.setReadOnly(readOnly);
         newEditorPanel.loadFile(file);
 
         // 添加到 tabbedPane
-        addTab(file.getName(), newEditorPanel);
+        addTab(title, newEditorPanel);
+    }
+
+    /**
+     * 为一个仍在写入的文件 (如正在下载的大型云端文档) 打开只读查看器
+     * @param file 正在写入的文件
+     * @param title 选项卡标题
+     * @return 新打开的查看器，调用方负责继续推送写入进度
+     */
+    public VirtualEditorPanel openStreamingFileInTab(File file, String title) throws IOException {
+        VirtualEditorPanel newEditorPanel = new VirtualEditorPanel();
+        newEditorPanel.setReadOnly(true);
+        newEditorPanel.beginStreaming(file, title);
+        addTab(title, newEditorPanel);
+        return newEditorPanel;
     }
 
     public void openBigFileInTab(File file) {
@@ -411,6 +493,7 @@ public class MainFrame extends JFrame {
         // 创建新的 EditorPanel
         EditorPanel newEditorPanel = new EditorPanel(controller, preferencesService);
         newEditorPanel.setTextAreaContent(content);
+        newEditorPanel.markSaved(content);
         newEditorPanel.getTextArea().setCaretPosition(0);
 
         // 设置云文件相关的所有状态
@@ -428,6 +511,44 @@ public class MainFrame extends JFrame {
         addTab(fileInfo.getTitle(), newEditorPanel);
     }
 
+    /**
+     * 云端文档在后台刷新后发现了更新的版本：打开的编辑器没有修改时直接载入，
+     * 有修改时询问用户，避免之后的保存静默覆盖云端的新内容
+     * @param id      文档ID
+     * @param content 云端的最新内容
+     */
+    public void onCloudContentRefreshed(Long id, String content) {
+        for (int i = 0; i < tabbedPane.getTabCount(); i++) {
+            Component tab = tabbedPane.getComponentAt(i);
+            if (!(tab instanceof EditorPanel)) {
+                continue;
+            }
+            EditorPanel panel = (EditorPanel) tab;
+            if (!panel.isCloudFile() || !id.equals(panel.getCloudContentId())) {
+                continue;
+            }
+            if (CloudSyncManager.getPendingContent(id) != null || content.equals(panel.getTextAreaContent())) {
+                // 用户已在此期间保存，或内容相同
+                return;
+            }
+            if (panel.isModified()) {
+                String message = "云端的 '" + panel.getCloudTitle() + "' 有更新的版本。\n"
+                        + "是否载入云端版本？选择否将保留当前修改，保存时会覆盖云端版本。";
+                int response = JOptionPane.showConfirmDialog(this, message, "云端文档已更新",
+                        JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+                if (response != JOptionPane.YES_OPTION) {
+                    return;
+                }
+            }
+            int caret = panel.getTextArea().getCaretPosition();
+            panel.setTextAreaContent(content);
+            panel.markSaved(content);
+            panel.getTextArea().setCaretPosition(Math.min(caret, content.length()));
+            NotificationUtil.showToast(this, "已载入云端的最新版本");
+            return;
+        }
+    }
+
     public void openFile(File file) {
         if (file != null && file.exists() && file.isFile()) {
             controller.onFileSelected(file);
@@ -3,6 +3,7 @@ package com.lfs.ui;
 import com.lfs.domain.BackendResponse;
 import com.lfs.domain.ContentResponse;
 import com.lfs.domain.DirTreeResponse;
+import com.lfs.domain.PendingContentWrite;
 import com.lfs.service.*;
 import com.lfs.util.NotificationUtil;
 
@@ -20,6 +21,7 @@ public class MainFrameController {
     private final UserPreferencesService preferencesService;
     private final ContentService contentService;
     private final DirService dirService;
+    private final FileOpenRouter fileOpenRouter;
     private final MainFrame mainFrame;
 
     public MainFrameController(MainFrame mainFrame) {
@@ -28,6 +30,10 @@ public class MainFrameController {
         this.preferencesService = new UserPreferencesService();
         this.contentService = new ContentService();
         this.dirService = new DirService();
+        this.fileOpenRouter = new FileOpenRouter(preferencesService);
+        // 后台上传成功后，用已同步的元数据刷新文件树中的节点
+        CloudSyncManager.addContentSyncedListener(write -> mainFrame.getFileExplorerPanel().updateCloudContentNode(
+                new ContentResponse(write.getId(), write.getDirId(), write.getTitle(), write.getType())));
     }
 
     /**
@@ -186,41 +192,183 @@ public class MainFrameController {
                 return;
             }
         }
-        final long LARGE_FILE_THRESHOLD = 10 * 1024 * 1024; // 10MB
+        mainFrame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+            private FileOpenRouter.Route route;
+
+            @Override
+            protected String doInBackground() throws Exception {
+                // 抽样判断打开方式，只有普通编辑器需要在这里读入整个文件
+                route = fileOpenRouter.route(file);
+                return route == FileOpenRouter.Route.FULL ? fileProcessorService.readFileContent(file) : null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    String content = get();
+                    switch (route) {
+                        case FULL:
+                            mainFrame.openFileInTab(file, content);
+                            break;
+                        case CHUNKED:
+                            mainFrame.openBigFileInTab(file);
+                            break;
+                        default:
+                            mainFrame.openFileInTabReadOnly(file);
+                            break;
+                    }
+                } catch (Exception e) {
+                    NotificationUtil.showErrorDialog(mainFrame, "无法读取此文件");
+                    e.printStackTrace();
+                } finally {
+                    mainFrame.setCursor(Cursor.getDefaultCursor());
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    public void onFileSelectedReadOnly(File file) {
+        mainFrame.openFileInTabReadOnly(file);
+    }
+
+    public void onCloudFileSelected(ContentResponse fileInfo, String content) {
+        mainFrame.openCloudFileInTab(fileInfo, content);
+    }
+
+    /**
+     * 打开云端文档
+     * 有本地修改或副本时直接从本地读取；大文档以只读查看器打开，未缓存时边下载边显示
+     */
+    public void openCloudFile(ContentResponse fileInfo) {
+        Long id = fileInfo.getId();
+        boolean hasUnsyncedChanges = CloudSyncManager.getPendingContent(id) != null;
+        File cachedFile = hasUnsyncedChanges ? null : contentService.getCachedContentFile(id);
+
+        mainFrame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        if (hasUnsyncedChanges || cachedFile != null) {
+            new SwingWorker<String, Void>() {
+                // 以下两个字段只在 EDT 上访问：后台刷新可能在编辑器打开之前完成，先记下再交给编辑器
+                private boolean opened;
+                private String refreshedContent;
+                private volatile boolean replicaOnly;
 
-        if (file.length() > LARGE_FILE_THRESHOLD) {
-            mainFrame.openBigFileInTab(file);
-        } else {
-            mainFrame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
                 @Override
-                protected String doInBackground() throws Exception {
-                    return fileProcessorService.readFileContent(file);
+                protected String doInBackground() {
+                    // 云端文档只能在普通编辑器中保存回云端，不适合普通编辑器的副本都用只读的映射查看器打开
+                    if (cachedFile != null && fileOpenRouter.route(cachedFile) != FileOpenRouter.Route.FULL) {
+                        replicaOnly = true;
+                        return null;
+                    }
+                    return contentService.loadContent(id, refreshed -> SwingUtilities.invokeLater(() -> {
+                        if (opened) {
+                            mainFrame.onCloudContentRefreshed(id, refreshed);
+                        } else {
+                            refreshedContent = refreshed;
+                        }
+                    }));
                 }
 
                 @Override
                 protected void done() {
                     try {
                         String content = get();
-                        mainFrame.openFileInTab(file, content);
+                        if (replicaOnly) {
+                            mainFrame.openCloudReplicaInTab(cachedFile, fileInfo.getTitle());
+                        } else if (content != null) {
+                            onCloudFileSelected(fileInfo, content);
+                            opened = true;
+                            if (refreshedContent != null) {
+                                mainFrame.onCloudContentRefreshed(id, refreshedContent);
+                            }
+                        }
                     } catch (Exception e) {
-                        NotificationUtil.showErrorDialog(mainFrame, "无法读取此文件");
+                        NotificationUtil.showErrorDialog(mainFrame, "加载云端文件失败: " + e.getMessage());
                         e.printStackTrace();
                     } finally {
                         mainFrame.setCursor(Cursor.getDefaultCursor());
                     }
                 }
-            };
-            worker.execute();
+            }.execute();
+        } else {
+            streamCloudFile(fileInfo);
         }
     }
 
-    public void onFileSelectedReadOnly(File file) {
-        mainFrame.openFileInTabReadOnly(file);
-    }
+    /**
+     * 流式下载云端文档。一旦确认是大文档就立即打开只读查看器并随下载进度追加内容，
+     * 小文档则在下载完成后用普通编辑器打开
+     */
+    private void streamCloudFile(ContentResponse fileInfo) {
+        new SwingWorker<String, Void>() {
+            private volatile File downloadFile;
+            private volatile VirtualEditorPanel viewer;
+            private volatile boolean viewerRequested;
+            private volatile boolean completed;
 
-    public void onCloudFileSelected(ContentResponse fileInfo, String content) {
-        mainFrame.openCloudFileInTab(fileInfo, content);
+            @Override
+            protected String doInBackground() throws Exception {
+                File file = contentService.streamContent(fileInfo.getId(), new ContentService.DownloadListener() {
+                    private long contentLength = -1;
+
+                    @Override
+                    public void onStart(File file, long length) {
+                        downloadFile = file;
+                        contentLength = length;
+                    }
+
+                    @Override
+                    public void onProgress(long bytesWritten) {
+                        // 下载中无法抽样，只按大小判断
+                        long threshold = fileOpenRouter.getFullMaxBytes();
+                        if (!viewerRequested && (contentLength > threshold || bytesWritten > threshold)) {
+                            viewerRequested = true;
+                            SwingUtilities.invokeLater(() -> openStreamingViewer(fileInfo, downloadFile));
+                        }
+                        VirtualEditorPanel current = viewer;
+                        if (current != null) {
+                            current.onBytesAvailable(bytesWritten);
+                        }
+                    }
+
+                    private void openStreamingViewer(ContentResponse info, File file) {
+                        try {
+                            VirtualEditorPanel panel = mainFrame.openStreamingFileInTab(file, info.getTitle());
+                            panel.onBytesAvailable(file.length());
+                            viewer = panel;
+                        } catch (IOException e) {
+                            NotificationUtil.showErrorDialog(mainFrame, "打开查看器失败: " + e.getMessage());
+                            e.printStackTrace();
+                        }
+                        mainFrame.setCursor(Cursor.getDefaultCursor());
+                    }
+                });
+                completed = file != null;
+                if (file == null || viewerRequested) {
+                    return null;
+                }
+                return fileProcessorService.readFileContent(file);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    String content = get();
+                    if (viewer != null) {
+                        viewer.onBytesAvailable(downloadFile.length());
+                        viewer.finishStreaming(completed);
+                    } else if (content != null) {
+                        onCloudFileSelected(fileInfo, content);
+                    }
+                } catch (Exception e) {
+                    NotificationUtil.showErrorDialog(mainFrame, "加载云端文件失败: " + e.getMessage());
+                    e.printStackTrace();
+                } finally {
+                    mainFrame.setCursor(Cursor.getDefaultCursor());
+                }
+            }
+        }.execute();
     }
 
     public void createAndOpenCloudFile(Long dirId, String title) {
@@ -267,6 +415,7 @@ public class MainFrameController {
                 try {
                     ContentResponse response = get();
                     if (response != null) {
+                        CloudSyncManager.updateMetadata(contentId, dirId, newTitle);
 //                        NotificationUtil.showToast(mainFrame, "重命名成功");
                         // 局部刷新节点
                         mainFrame.getFileExplorerPanel().updateCloudContentNode(response);
@@ -331,6 +480,7 @@ public class MainFrameController {
             protected void done() {
                 try {
                     if (get()) {
+                        CloudSyncManager.discard(contentId);
                         NotificationUtil.showToast(mainFrame, "删除成功");
                         mainFrame.getFileExplorerPanel().removeCloudContentNode(contentId);
                     }
@@ -366,6 +516,7 @@ public class MainFrameController {
                     if (contentResponse == null) {
                         return null;
                     }
+                    CloudSyncManager.updateMetadata(content.getId(), targetDirId, content.getTitle());
                     // 手动构造更新后的对象
                     ContentResponse updated = new ContentResponse();
                     updated.setId(content.getId());
@@ -433,29 +584,36 @@ public class MainFrameController {
             return;
         }
 
-        mainFrame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-
-        new SwingWorker<ContentResponse, Void>() {
+        // 先写入本地同步日志并立即确认，上传由 CloudSyncManager 在后台完成；日志落盘在后台线程上进行
+        PendingContentWrite write = PendingContentWrite.builder()
+                .id(contentId)
+                .dirId(dirId)
+                .title(title)
+                .type(type)
+                .content(content)
+                .build();
+        new SwingWorker<Void, Void>() {
             @Override
-            protected ContentResponse doInBackground() {
-                return contentService.updateContent(contentId, dirId, title, content, type);
+            protected Void doInBackground() throws IOException {
+                CloudSyncManager.enqueue(write);
+                return null;
             }
 
             @Override
             protected void done() {
                 try {
-                    ContentResponse response = get();
-                    if (response != null) {
-                        NotificationUtil.showToast(mainFrame, "保存成功！");
-                        // 保存成功后，使用服务器返回的最新元数据（包含更新后的type）去刷新文件浏览器左侧树中的节点信息
-                        mainFrame.getFileExplorerPanel().updateCloudContentNode(response);
-                    }
+                    get();
                 } catch (Exception e) {
-                    NotificationUtil.showErrorDialog(mainFrame, "更新云文件失败: " + e.getMessage());
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    NotificationUtil.showErrorDialog(mainFrame, "保存失败，无法写入本地同步日志: " + cause.getMessage());
                     e.printStackTrace();
-                } finally {
-                    mainFrame.setCursor(Cursor.getDefaultCursor());
+                    return;
                 }
+                activeEditorPanel.markSaved(content);
+                NotificationUtil.showToast(mainFrame, "已保存，正在后台同步");
+                // 使用最新的元数据（包含更新后的type）去刷新文件浏览器左侧树中的节点信息
+                ContentResponse updated = new ContentResponse(contentId, dirId, title, type);
+                mainFrame.getFileExplorerPanel().updateCloudContentNode(updated);
             }
         }.execute();
     }
@@ -476,9 +634,13 @@ public class MainFrameController {
             fileToSave = activeEditorPanel.getCurrentFile();
             content = activeEditorPanel.getTextAreaContent();
         } else if (activeComponent instanceof LargeFileEditorPanel) {
-            LargeFileEditorPanel activeLargeFileEditorPanel = (LargeFileEditorPanel) activeComponent;
-            fileToSave = activeLargeFileEditorPanel.getCurrentFile();
-            content = activeLargeFileEditorPanel.getTextAreaContent();
+            // 大文件由面板在后台流式保存，不在 EDT 上复制整个文档
+            ((LargeFileEditorPanel) activeComponent).saveFile();
+            return;
+        } else if (activeComponent instanceof VirtualEditorPanel) {
+            // 超大文件按行编辑，由面板在后台流式保存
+            ((VirtualEditorPanel) activeComponent).saveFile();
+            return;
         }
 
         if (fileToSave == null) {
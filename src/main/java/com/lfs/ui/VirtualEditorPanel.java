@@ -1,24 +1,82 @@
 package com.lfs.ui;
 
+import com.lfs.service.FileProcessorService;
+import com.lfs.service.LineIndexService;
+import com.lfs.util.LineOffsetIndex;
+import com.lfs.util.LinePieceTable;
 import com.lfs.util.NotificationUtil;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class VirtualEditorPanel extends JPanel {
 
+    // 跟随模式下检查文件变化的间隔，所有面板共用一个检查线程
+    private static final long FOLLOW_INTERVAL_MS = 500;
+    private static final ScheduledExecutorService FOLLOW_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "VirtualEditorFollow");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final JList<String> lineList;
     private final FileLineListModel model;
     private final JScrollPane scrollPane;
+    // 水平滚动条控制各行从第几个字节开始显示，只读取和绘制窗口内的内容
+    private final JScrollBar horizontalBar;
     private final JLabel statusLabel;
+    private final JCheckBox followCheckBox;
     private File currentFile;
+    private final LineIndexService lineIndexService = new LineIndexService();
+    private SwingWorker<LineOffsetIndex, Long> indexWorker;
+
+    // 流式加载 (文件仍在写入) 时使用的状态
+    private String streamingTitle;
+    private ExecutorService streamingExecutor;
+    private final AtomicLong availableLength = new AtomicLong();
+    private final AtomicBoolean indexScheduled = new AtomicBoolean();
+    // 面板已关闭，下载线程此后的进度通知直接忽略
+    private volatile boolean disposed;
+    // 已建立索引的字节数，由当前唯一的索引写入者 (加载、流式或跟随) 更新
+    private volatile long indexedLength;
+
+    // 跟随模式 (tail -f) 使用的状态
+    private volatile ScheduledFuture<?> followTask;
+    private volatile LineOffsetIndex followIndex;
+    private Object followFileKey;
+
+    private VirtualSearchDialog searchDialog;
+    private final FileProcessorService fileProcessorService = new FileProcessorService();
+    private boolean saving;
+    // 云端文档的本地副本只能查看，保存不会同步到云端
+    private boolean readOnly;
 
     public VirtualEditorPanel() {
         super(new BorderLayout());
@@ -33,34 +91,475 @@ public class VirtualEditorPanel extends JPanel {
 
 
         scrollPane = new JScrollPane(lineList);
-        add(scrollPane, BorderLayout.CENTER);
+        scrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+        horizontalBar = new JScrollBar(JScrollBar.HORIZONTAL);
+        horizontalBar.setVisible(false);
+        horizontalBar.setUnitIncrement(8);
+        horizontalBar.addAdjustmentListener(e -> model.setColumnOffset(e.getValue()));
+        scrollPane.getViewport().addChangeListener(e -> updateHorizontalBar());
+        lineList.addMouseWheelListener(e -> {
+            if (e.isShiftDown()) {
+                horizontalBar.setValue(horizontalBar.getValue() + e.getWheelRotation() * horizontalBar.getBlockIncrement() / 4);
+            } else {
+                // 普通滚轮仍交给滚动面板处理
+                scrollPane.dispatchEvent(SwingUtilities.convertMouseEvent(lineList, e, scrollPane));
+            }
+        });
+        JPanel viewPanel = new JPanel(new BorderLayout());
+        viewPanel.add(scrollPane, BorderLayout.CENTER);
+        viewPanel.add(horizontalBar, BorderLayout.SOUTH);
+        add(viewPanel, BorderLayout.CENTER);
 
         statusLabel = new JLabel(" ");
         statusLabel.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
-        add(statusLabel, BorderLayout.SOUTH);
+        followCheckBox = new JCheckBox("跟随文件末尾");
+        followCheckBox.setToolTipText("文件仍在写入时自动加载新增的行 (类似 tail -f)");
+        followCheckBox.addActionListener(e -> {
+            if (followCheckBox.isSelected()) {
+                startFollowing();
+            } else {
+                stopFollowing();
+            }
+        });
+        JPanel statusBar = new JPanel(new BorderLayout());
+        statusBar.add(statusLabel, BorderLayout.CENTER);
+        statusBar.add(followCheckBox, BorderLayout.EAST);
+        add(statusBar, BorderLayout.SOUTH);
+
+        setupFindShortcut();
+        setupEditActions();
+    }
+
+    /**
+     * 双击或右键菜单按行编辑，编辑记录在 piece table 中，保存前不会改动原文件
+     */
+    private void setupEditActions() {
+        JPopupMenu popupMenu = new JPopupMenu();
+        JMenuItem editItem = new JMenuItem("编辑行...");
+        editItem.addActionListener(e -> editSelectedLine());
+        JMenuItem insertAboveItem = new JMenuItem("在上方插入行...");
+        insertAboveItem.addActionListener(e -> insertLine(false));
+        JMenuItem insertBelowItem = new JMenuItem("在下方插入行...");
+        insertBelowItem.addActionListener(e -> insertLine(true));
+        JMenuItem deleteItem = new JMenuItem("删除行");
+        deleteItem.addActionListener(e -> deleteSelectedLine());
+        popupMenu.add(editItem);
+        popupMenu.add(insertAboveItem);
+        popupMenu.add(insertBelowItem);
+        popupMenu.addSeparator();
+        popupMenu.add(deleteItem);
+
+        InputMap inputMap = lineList.getInputMap(JComponent.WHEN_FOCUSED);
+        ActionMap actionMap = lineList.getActionMap();
+        KeyStroke keyStroke = KeyStroke.getKeyStroke(KeyEvent.VK_S, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx());
+        String saveActionKey = "saveAction";
+
+        inputMap.put(keyStroke, saveActionKey);
+        actionMap.put(saveActionKey, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                saveFile();
+            }
+        });
+
+        lineList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && SwingUtilities.isLeftMouseButton(e)) {
+                    editSelectedLine();
+                }
+            }
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                showPopup(e);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                showPopup(e);
+            }
+
+            private void showPopup(MouseEvent e) {
+                if (!e.isPopupTrigger()) {
+                    return;
+                }
+                int index = lineList.locationToIndex(e.getPoint());
+                if (index >= 0) {
+                    lineList.setSelectedIndex(index);
+                    popupMenu.show(lineList, e.getX(), e.getY());
+                }
+            }
+        });
+    }
+
+    private void editSelectedLine() {
+        int line = lineList.getSelectedIndex();
+        if (line < 0 || !checkEditable()) {
+            return;
+        }
+        String current = model.readFullLine(line);
+        if (current == null) {
+            NotificationUtil.showToast(this, "该行超过 " + (FileLineListModel.MAX_EDIT_BYTES >> 20) + " MB，无法在此编辑");
+            return;
+        }
+        String text = promptLine("编辑第 " + (line + 1) + " 行", stripCarriageReturn(current));
+        if (text != null) {
+            model.replaceLine(line, text);
+            editorChanged();
+        }
+    }
+
+    private void insertLine(boolean below) {
+        int selected = lineList.getSelectedIndex();
+        if (selected < 0 || !checkEditable()) {
+            return;
+        }
+        int line = below ? selected + 1 : selected;
+        String text = promptLine("在第 " + (line + 1) + " 行插入", "");
+        if (text != null) {
+            model.insertLine(line, text);
+            lineList.setSelectedIndex(line);
+            editorChanged();
+        }
+    }
+
+    private void deleteSelectedLine() {
+        int line = lineList.getSelectedIndex();
+        if (line < 0 || !checkEditable()) {
+            return;
+        }
+        model.deleteLine(line);
+        if (model.getSize() > 0) {
+            lineList.setSelectedIndex(Math.min(line, model.getSize() - 1));
+        }
+        editorChanged();
+    }
+
+    private String promptLine(String title, String initial) {
+        if (initial.length() > FileLineListModel.WINDOW_BYTES) {
+            return promptLongLine(title, initial);
+        }
+        Object result = JOptionPane.showInputDialog(this, "内容:", title, JOptionPane.PLAIN_MESSAGE, null, null, initial);
+        return result == null ? null : stripCarriageReturn(result.toString());
+    }
+
+    /**
+     * 超长的行在自动换行的文本区中编辑，单行输入框显示不下；回车不换行，保证仍是一行
+     */
+    private String promptLongLine(String title, String initial) {
+        JTextArea textArea = new JTextArea(initial, 20, 80);
+        textArea.setLineWrap(true);
+        textArea.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "none");
+        textArea.setCaretPosition(0);
+        int option = JOptionPane.showConfirmDialog(this, new JScrollPane(textArea), title,
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (option != JOptionPane.OK_OPTION) {
+            return null;
+        }
+        // 粘贴进来的换行也去掉
+        return stripCarriageReturn(textArea.getText().replace("\r\n", "").replace("\n", ""));
+    }
+
+    /**
+     * 设置是否只读，只读时拒绝一切编辑和保存
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * 非只读、索引完成、未在跟随或接收下载、未在保存时才允许编辑
+     */
+    private boolean checkEditable() {
+        if (readOnly) {
+            NotificationUtil.showToast(this, "此文档只读，不能编辑");
+            return false;
+        }
+        if (saving) {
+            NotificationUtil.showToast(this, "正在保存，请稍后再编辑");
+            return false;
+        }
+        if (streamingExecutor != null || !isIndexComplete()) {
+            NotificationUtil.showToast(this, "文件加载完成后才能编辑");
+            return false;
+        }
+        if (followTask != null) {
+            NotificationUtil.showToast(this, "请先关闭“跟随文件末尾”再编辑");
+            return false;
+        }
+        return true;
+    }
+
+    private void editorChanged() {
+        // 编辑后的行号与磁盘上的文件不再对应，不能继续跟随
+        followCheckBox.setEnabled(false);
+        statusLabel.setText("已修改: " + currentFile.getName() + " - 共 " + model.getSize() + " 行 (Ctrl+S 保存)");
+    }
+
+    public boolean isModified() {
+        return model.isModified();
+    }
+
+    /**
+     * 在后台把编辑流式写回文件，完成后重新打开文件
+     */
+    public void saveFile() {
+        if (readOnly) {
+            NotificationUtil.showToast(this, "此文档只读，不能保存");
+            return;
+        }
+        if (currentFile == null || !model.isModified()) {
+            NotificationUtil.showToast(this, "没有需要保存的修改");
+            return;
+        }
+        if (saving) {
+            return;
+        }
+        saving = true;
+        File file = currentFile;
+        LineOffsetIndex lineOffsets = model.getLineOffsets();
+        long length = indexedLength;
+        LinePieceTable pieceTable = model.getPieceTable();
+        String lineSeparator = detectLineSeparator();
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        statusLabel.setText("正在保存 " + file.getName() + "...");
+
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                fileProcessorService.saveLinePieces(file, lineOffsets, length, pieceTable, lineSeparator);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                saving = false;
+                setCursor(Cursor.getDefaultCursor());
+                try {
+                    get();
+                    NotificationUtil.showSaveSuccess(VirtualEditorPanel.this);
+                    int selected = lineList.getSelectedIndex();
+                    loadFile(file);
+                    if (selected >= 0) {
+                        lineList.ensureIndexIsVisible(Math.min(selected, model.getSize() - 1));
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    statusLabel.setText("保存失败: " + e.getMessage());
+                    NotificationUtil.showErrorDialog(VirtualEditorPanel.this, "保存文件失败: " + e.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * 新行沿用原文件第一行的换行符
+     */
+    private String detectLineSeparator() {
+        return model.firstLineEndsWithCarriageReturn() ? "\r\n" : "\n";
+    }
+
+    /**
+     * 按可见行中最长的一行更新水平滚动条，只在出现超出视口宽度的行时显示
+     */
+    private void updateHorizontalBar() {
+        int first = lineList.getFirstVisibleIndex();
+        int last = lineList.getLastVisibleIndex();
+        if (first < 0) {
+            return;
+        }
+        long longest = 0;
+        for (int i = first; i <= last; i++) {
+            longest = Math.max(longest, model.getLineLength(i));
+        }
+        FontMetrics metrics = lineList.getFontMetrics(LineCellRenderer.FONT);
+        int visibleColumns = Math.max(1, scrollPane.getViewport().getWidth() / metrics.charWidth('0') - 10);
+        int maximum = (int) Math.min(Integer.MAX_VALUE, Math.max(longest, horizontalBar.getValue() + visibleColumns));
+        horizontalBar.setValues(horizontalBar.getValue(), visibleColumns, 0, maximum);
+        horizontalBar.setBlockIncrement(visibleColumns);
+        // 出现后保持显示，避免滚动条反复出现和消失导致视口高度来回变化
+        if (longest > visibleColumns && !horizontalBar.isVisible()) {
+            horizontalBar.setVisible(true);
+            revalidate();
+        }
+    }
+
+    private static String stripCarriageReturn(String text) {
+        return text != null && text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    private void setupFindShortcut() {
+        InputMap inputMap = lineList.getInputMap(JComponent.WHEN_FOCUSED);
+        ActionMap actionMap = lineList.getActionMap();
+
+        KeyStroke keyStroke = KeyStroke.getKeyStroke(KeyEvent.VK_F, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx());
+        String findActionKey = "findAction";
+
+        inputMap.put(keyStroke, findActionKey);
+        actionMap.put(findActionKey, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (searchDialog == null) {
+                    Window owner = SwingUtilities.getWindowAncestor(VirtualEditorPanel.this);
+                    if (owner instanceof Frame) {
+                        searchDialog = new VirtualSearchDialog((Frame) owner, VirtualEditorPanel.this);
+                    }
+                }
+                searchDialog.setVisible(true);
+            }
+        });
+    }
+
+    @Override
+    public void removeNotify() {
+        // 标签页关闭后释放文件和后台线程
+        dispose();
+        super.removeNotify();
+    }
+
+    /**
+     * 停止跟随、索引和流式加载，关闭查找窗口和文件通道。之后不应再使用该面板
+     */
+    public void dispose() {
+        disposed = true;
+        stopFollowing();
+        if (indexWorker != null) {
+            indexWorker.cancel(true);
+        }
+        if (streamingExecutor != null) {
+            streamingExecutor.shutdownNow();
+        }
+        if (searchDialog != null) {
+            searchDialog.dispose();
+            searchDialog = null;
+        }
+        model.close();
     }
 
     public File getCurrentFile() {
         return currentFile;
     }
 
+    /**
+     * 整个文件是否已经建立索引 (加载或流式写入都已结束)，搜索结果只有在此之后才能完整定位
+     */
+    public boolean isIndexComplete() {
+        if (streamingExecutor != null) {
+            return streamingExecutor.isTerminated();
+        }
+        return indexWorker != null && indexWorker.isDone() && !indexWorker.isCancelled();
+    }
+
+    /**
+     * 查找包含某个字节位置的行
+     * @param offset 字节位置
+     * @return 行号 (从 0 开始)
+     */
+    public int getLineOfOffset(long offset) {
+        int line = model.getLineOffsets().lineOf(offset);
+        return Math.max(0, Math.min(line, model.getSize() - 1));
+    }
+
+    public String getLineText(int line) {
+        return line < model.getSize() ? model.getElementAt(line) : null;
+    }
+
+    /**
+     * 选中并滚动到指定行
+     * @param line 行号 (从 0 开始)
+     */
+    public void goToLine(int line) {
+        if (line < 0 || line >= model.getSize()) {
+            return;
+        }
+        lineList.setSelectedIndex(line);
+        lineList.ensureIndexIsVisible(line);
+    }
+
+    /**
+     * 打开文件并渐进式建立索引：文件开头索引完成后立即显示，之后行数和滚动条随扫描进度增长，
+     * 已索引的行在扫描期间即可浏览和跳转
+     *
+     * @param file 要打开的文件
+     */
     public void loadFile(File file) {
+        if (indexWorker != null) {
+            indexWorker.cancel(true);
+        }
+        stopFollowing();
+        followCheckBox.setEnabled(true);
+        horizontalBar.setValue(0);
+        horizontalBar.setVisible(false);
         this.currentFile = file;
         statusLabel.setText("正在为 " + file.getName() + " 创建索引...");
         setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 
-        new SwingWorker<List<Long>, Void>() {
+        LineOffsetIndex lineOffsets;
+        try {
+            model.open(file);
+            lineOffsets = model.getLineOffsets();
+        } catch (IOException e) {
+            e.printStackTrace();
+            NotificationUtil.showErrorDialog(this, "打开文件失败: " + e.getMessage());
+            statusLabel.setText("加载失败: " + e.getMessage());
+            setCursor(Cursor.getDefaultCursor());
+            return;
+        }
+
+        indexWorker = new SwingWorker<LineOffsetIndex, Long>() {
+            @Override
+            protected LineOffsetIndex doInBackground() throws Exception {
+                // 之前打开过的大文件直接使用缓存的索引 (缓存只在文件大小未变时有效)
+                LineIndexService.CachedIndex cached = lineIndexService.loadCachedIndex(file);
+                if (cached != null) {
+                    indexedLength = cached.getIndexedLength();
+                    return cached.getIndex();
+                }
+                LineIndexService.FileStamp stamp = lineIndexService.buildIndex(file, lineOffsets,
+                        (scannedBytes, totalBytes) -> publish(scannedBytes));
+                indexedLength = stamp.getSize();
+                lineIndexService.cacheIndex(file, lineOffsets, stamp);
+                return lineOffsets;
+            }
+
             @Override
-            protected List<Long> doInBackground() throws Exception {
-                return model.indexFile(file);
+            protected void process(List<Long> chunks) {
+                // 已经打开了其它文件，丢弃旧索引的进度
+                if (isCancelled() || model.getLineOffsets() != lineOffsets) {
+                    return;
+                }
+                model.publishLines(lineOffsets.size());
+                if (getCursor().getType() == Cursor.WAIT_CURSOR) {
+                    // 第一屏已经可以显示
+                    setCursor(Cursor.getDefaultCursor());
+                }
+                long scannedBytes = chunks.get(chunks.size() - 1);
+                long percent = file.length() == 0 ? 100 : scannedBytes * 100 / file.length();
+                statusLabel.setText("正在为 " + file.getName() + " 创建索引... 已索引 " + model.getSize()
+                        + " 行 (" + percent + "%)");
             }
 
             @Override
             protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
                 try {
-                    List<Long> lineOffsets = get();
-                    model.setLineOffsets(lineOffsets);
+                    LineOffsetIndex result = get();
+                    if (result != lineOffsets) {
+                        model.setLineOffsets(result);
+                    } else {
+                        model.publishLines(lineOffsets.size());
+                    }
                     statusLabel.setText("加载完成: " + file.getName() + " - 共 " + model.getSize() + " 行");
+                    if (followCheckBox.isSelected()) {
+                        startFollowing();
+                    }
                 } catch (Exception e) {
                     e.printStackTrace();
                     NotificationUtil.showErrorDialog(VirtualEditorPanel.this, "创建文件索引失败: " + e.getMessage());
@@ -69,42 +568,316 @@ public class VirtualEditorPanel extends JPanel {
                     setCursor(Cursor.getDefaultCursor());
                 }
             }
-        }.execute();
+        };
+        indexWorker.execute();
+    }
+
+    /**
+     * 以流式方式打开一个仍在写入的文件 (例如正在下载的云端文档)
+     * 之后每次 {@link #onBytesAvailable(long)} 只为新到达的字节建立索引，已到达的行可以立即浏览
+     *
+     * @param file  正在写入的文件
+     * @param title 状态栏中显示的名称
+     */
+    public void beginStreaming(File file, String title) throws IOException {
+        this.currentFile = file;
+        this.streamingTitle = title;
+        this.indexedLength = 0;
+        this.availableLength.set(0);
+        stopFollowing();
+        followCheckBox.setEnabled(false);
+        this.streamingExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "VirtualEditorStreamIndexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        model.open(file);
+        statusLabel.setText("正在下载 " + title + "...");
+    }
+
+    /**
+     * 通知文件已写入到 length 字节，可在任意线程调用，连续的通知会被合并
+     *
+     * @param length 文件当前已写入的长度
+     */
+    public void onBytesAvailable(long length) {
+        if (disposed) {
+            return;
+        }
+        availableLength.accumulateAndGet(length, Math::max);
+        if (indexScheduled.compareAndSet(false, true)) {
+            try {
+                streamingExecutor.submit(this::indexAvailableBytes);
+            } catch (RejectedExecutionException e) {
+                // 面板刚刚关闭
+            }
+        }
+    }
+
+    /**
+     * 文件写入结束
+     *
+     * @param success 是否完整写入
+     */
+    public void finishStreaming(boolean success) {
+        if (streamingExecutor == null || disposed) {
+            return;
+        }
+        streamingExecutor.submit(() -> {
+            indexAvailableBytes();
+            SwingUtilities.invokeLater(() -> statusLabel.setText(success
+                    ? "加载完成: " + streamingTitle + " - 共 " + model.getSize() + " 行"
+                    : "下载中断: " + streamingTitle + " - 已加载 " + model.getSize() + " 行"));
+        });
+        streamingExecutor.shutdown();
+    }
+
+    /**
+     * 在索引线程上扫描 [indexedLength, availableLength) 之间新到达的字节，新行直接追加到模型的索引，
+     * 再由 EDT 发布新的行数
+     */
+    private void indexAvailableBytes() {
+        indexScheduled.set(false);
+        long target = availableLength.get();
+        if (target <= indexedLength) {
+            return;
+        }
+        LineOffsetIndex lineOffsets = model.getLineOffsets();
+        try {
+            indexedLength = lineIndexService.indexRange(currentFile, indexedLength, target, lineOffsets);
+        } catch (IOException e) {
+            if (!disposed) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        long loadedBytes = target;
+        int lineCount = lineOffsets.size();
+        SwingUtilities.invokeLater(() -> {
+            model.publishLines(lineCount);
+            statusLabel.setText("正在下载 " + streamingTitle + "... 已加载 " + model.getSize() + " 行 ("
+                    + loadedBytes / 1024 + " KB)");
+        });
+    }
+
+    /**
+     * 开始跟随文件末尾：定时检查文件，只为新追加的字节建立索引；
+     * 文件被截断时丢弃超出部分的行，文件被轮转 (同一路径换成了新文件) 时重新打开
+     */
+    private void startFollowing() {
+        if (currentFile == null || followTask != null || model.isModified()
+                || (indexWorker != null && !indexWorker.isDone())) {
+            // 仍在建立索引时，索引完成后再开始跟随
+            return;
+        }
+        try {
+            followFileKey = fileKey(currentFile);
+        } catch (IOException e) {
+            followFileKey = null;
+        }
+        followIndex = model.getLineOffsets();
+        followTask = FOLLOW_EXECUTOR.scheduleWithFixedDelay(this::pollFollowedFile, 0, FOLLOW_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopFollowing() {
+        ScheduledFuture<?> task = followTask;
+        if (task != null) {
+            task.cancel(false);
+            followTask = null;
+        }
+        followIndex = null;
+    }
+
+    /**
+     * 在跟随线程上检查文件变化，是跟随期间索引的唯一写入者
+     */
+    private void pollFollowedFile() {
+        LineOffsetIndex index = followIndex;
+        File file = currentFile;
+        if (index == null) {
+            return;
+        }
+        try {
+            Object key = fileKey(file);
+            if (key == null) {
+                SwingUtilities.invokeLater(() -> statusLabel.setText("跟随中: " + file.getName() + " 已不存在，等待重新创建..."));
+                return;
+            }
+            if (followFileKey != null && !followFileKey.equals(key)) {
+                // 文件被轮转，旧文件的索引对新文件没有意义，重新打开
+                followIndex = null;
+                SwingUtilities.invokeLater(() -> {
+                    if (model.getLineOffsets() == index) {
+                        loadFile(file);
+                    }
+                });
+                return;
+            }
+
+            long length = file.length();
+            LineOffsetIndex target = index;
+            if (length < indexedLength) {
+                // 文件被截断 (例如 copytruncate)：保留起始位置仍在文件内的行，从最后一行开始重新扫描
+                int keep = Math.max(1, index.lineOf(length) + 1);
+                LineOffsetIndex truncated = new LineOffsetIndex();
+                for (int line = 0; line < keep; line++) {
+                    truncated.add(index.get(line));
+                }
+                followIndex = truncated;
+                indexedLength = truncated.get(keep - 1);
+                SwingUtilities.invokeLater(() -> {
+                    if (model.getLineOffsets() == index) {
+                        model.setLineOffsets(truncated);
+                    }
+                });
+                target = truncated;
+            }
+            if (length > indexedLength) {
+                indexedLength = lineIndexService.indexRange(file, indexedLength, length, target);
+                publishFollowedLines(target, file);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void publishFollowedLines(LineOffsetIndex index, File file) {
+        int lineCount = index.size();
+        SwingUtilities.invokeLater(() -> {
+            if (model.getLineOffsets() != index) {
+                return;
+            }
+            // 只有停在末尾时才自动滚动，向上翻看时不打扰
+            boolean atBottom = lineList.getLastVisibleIndex() >= model.getSize() - 1;
+            model.publishLines(lineCount);
+            if (atBottom) {
+                lineList.ensureIndexIsVisible(model.getSize() - 1);
+            }
+            statusLabel.setText("跟随中: " + file.getName() + " - 共 " + model.getSize() + " 行");
+        });
+    }
+
+    /**
+     * 文件的唯一标识，用于识别轮转；平台不提供 inode 时使用创建时间
+     * @return 标识，文件不存在时返回 null
+     */
+    private static Object fileKey(File file) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
     }
 
     // 用于处理大文件的自定义列表模型
     private static class FileLineListModel extends AbstractListModel<String> {
-        private RandomAccessFile file;
-        private List<Long> lineOffsets = new ArrayList<>();
+        // 每 BLOCK_LINES 行为一块，整块一次读取并解码，按 LRU 缓存最近使用的块
+        private static final int BLOCK_LINES = 256;
+        private static final int CACHE_BLOCKS = 64;
+        // 超过该大小的块 (行特别长) 不缓存，逐行读取
+        private static final int MAX_BLOCK_BYTES = 4 << 20;
+        // 每行最多读取和显示的字节数 (大于一屏宽度即可)，超长的行只按水平位置读取这一段
+        static final int WINDOW_BYTES = 1024;
+        // 编辑时完整读取一行的上限，只有显示按窗口读取
+        static final int MAX_EDIT_BYTES = 8 << 20;
+        // 沿滚动方向预读下一块，所有面板共用一个预读线程
+        private static final ExecutorService PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "VirtualEditorPrefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
 
-        public List<Long> indexFile(File f) throws IOException {
-            List<Long> offsets = new ArrayList<>();
-            if (this.file != null) {
-                this.file.close();
+        private final Map<Integer, LineBlock> blockCache = new LinkedHashMap<Integer, LineBlock>(CACHE_BLOCKS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, LineBlock> eldest) {
+                return size() > CACHE_BLOCKS;
             }
-            this.file = new RandomAccessFile(f, "r");
-            offsets.add(0L); // 第一行从 0 开始
+        };
+        // 只使用按位置读取，不共享文件指针，渲染、预读等线程可以同时读取而无需加锁
+        private volatile FileChannel channel;
+        private volatile Path path;
+        private volatile LineOffsetIndex lineOffsets = new LineOffsetIndex();
+        // 第一次编辑时创建，行号从此以 piece table 为准；为 null 表示与原文件一致
+        private LinePieceTable pieceTable;
+        // 已通知给 JList 的行数，只在 EDT 上修改；索引可能在后台继续增长
+        private int publishedSize;
+        // 每次打开文件加一，旧文件的预读结果不会进入缓存
+        private volatile int generation;
+        // 面板关闭后不再重新打开通道
+        private volatile boolean released;
+        private int lastBlockIndex = -1;
+        // 水平滚动位置：各行从第几个字节开始显示，只在 EDT 上修改
+        private long columnOffset;
 
-            byte[] buffer = new byte[65536]; // 64KB 缓冲区
-            int bytesRead;
-            long currentFilePointer = 0;
+        /**
+         * 打开文件但不建立索引，索引随后由后台线程追加到 {@link #getLineOffsets()}，
+         * 再通过 {@link #publishLines(int)} 通知列表
+         */
+        public void open(File f) throws IOException {
+            FileChannel oldChannel = this.channel;
+            this.path = f.toPath();
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            if (oldChannel != null) {
+                oldChannel.close();
+            }
+            LineOffsetIndex offsets = new LineOffsetIndex();
+            offsets.add(0);
+            setLineOffsets(offsets);
+        }
 
-            while ((bytesRead = file.read(buffer)) != -1) {
-                for (int i = 0; i < bytesRead; i++) {
-                    if (buffer[i] == '\n') {
-                        offsets.add(currentFilePointer + i + 1);
-                    }
+        /**
+         * 关闭文件通道，之后的读取都会失败
+         */
+        public synchronized void close() {
+            released = true;
+            FileChannel current = channel;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
-                currentFilePointer += bytesRead;
             }
-            // 确保通过 getElementAt 函数重置文件指针，以便后续读取
-            file.seek(0);
-            return offsets;
+            synchronized (blockCache) {
+                blockCache.clear();
+            }
         }
 
-        public void setLineOffsets(List<Long> lineOffsets) {
+        public LineOffsetIndex getLineOffsets() {
+            return lineOffsets;
+        }
+
+        /**
+         * 把后台追加到索引中的行发布给列表 (只能在 EDT 上调用)
+         * @param lineCount 索引中已写入的行数
+         */
+        public void publishLines(int lineCount) {
+            int oldSize = publishedSize;
+            // 原来的最后一行可能变长了
+            if (oldSize > 0) {
+                fireContentsChanged(this, oldSize - 1, oldSize - 1);
+            }
+            if (lineCount <= oldSize) {
+                return;
+            }
+            publishedSize = lineCount;
+            fireIntervalAdded(this, oldSize, lineCount - 1);
+        }
+
+        /**
+         * 替换整个索引 (打开新文件、使用缓存索引或文件被截断)，同时清空行缓存
+         */
+        public void setLineOffsets(LineOffsetIndex lineOffsets) {
+            generation++;
+            pieceTable = null;
+            synchronized (blockCache) {
+                blockCache.clear();
+            }
+            lastBlockIndex = -1;
             int oldSize = getSize();
             this.lineOffsets = lineOffsets;
+            this.publishedSize = lineOffsets.size();
             int newSize = getSize();
             if (newSize > oldSize) {
                 fireIntervalAdded(this, oldSize, newSize - 1);
@@ -114,54 +887,380 @@ public class VirtualEditorPanel extends JPanel {
             fireContentsChanged(this, 0, newSize - 1);
         }
 
+        public boolean isModified() {
+            return pieceTable != null && pieceTable.isModified();
+        }
+
+        public LinePieceTable getPieceTable() {
+            return pieceTable;
+        }
+
+        public void replaceLine(int index, String text) {
+            editTable().replace(index, text);
+            fireContentsChanged(this, index, index);
+        }
+
+        public void insertLine(int index, String text) {
+            editTable().insert(index, text);
+            fireIntervalAdded(this, index, index);
+        }
+
+        public void deleteLine(int index) {
+            editTable().delete(index);
+            fireIntervalRemoved(this, index, index);
+        }
+
+        private LinePieceTable editTable() {
+            if (pieceTable == null) {
+                pieceTable = new LinePieceTable(publishedSize);
+            }
+            return pieceTable;
+        }
+
+        /**
+         * 设置水平滚动位置，已缓存的块在下次显示时按新位置重新解码
+         */
+        public void setColumnOffset(long columnOffset) {
+            if (this.columnOffset == columnOffset) {
+                return;
+            }
+            this.columnOffset = columnOffset;
+            if (getSize() > 0) {
+                fireContentsChanged(this, 0, getSize() - 1);
+            }
+        }
+
+        /**
+         * @return 一行的长度 (原文件中的行按字节计算，新输入的行按字符计算)
+         */
+        public long getLineLength(int index) {
+            if (pieceTable != null) {
+                String added = pieceTable.addedLine(index);
+                if (added != null) {
+                    return added.length();
+                }
+                index = pieceTable.originalLine(index);
+            }
+            try {
+                return originalLineEnd(lineOffsets, index) - lineOffsets.get(index);
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+
+        /**
+         * 读取完整的一行用于编辑，不受水平位置影响
+         * @return 行内容；行超过 MAX_EDIT_BYTES 字节时返回 null
+         */
+        public String readFullLine(int index) {
+            if (pieceTable != null) {
+                String added = pieceTable.addedLine(index);
+                if (added != null) {
+                    return added;
+                }
+                index = pieceTable.originalLine(index);
+            }
+            try {
+                long start = lineOffsets.get(index);
+                long end = originalLineEnd(lineOffsets, index);
+                if (end - start > MAX_EDIT_BYTES) {
+                    return null;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+                int length = read(buffer, start);
+                return new String(buffer.array(), 0, length, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        /**
+         * 原文件第一行是否以 \r\n 结尾
+         */
+        public boolean firstLineEndsWithCarriageReturn() {
+            LineOffsetIndex offsets = lineOffsets;
+            if (offsets.size() < 2 || offsets.get(1) < 2) {
+                return false;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(1);
+                return read(buffer, offsets.get(1) - 2) == 1 && buffer.get(0) == '\r';
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
         @Override
         public int getSize() {
-            return lineOffsets.isEmpty() ? 0 : lineOffsets.size();
+            return pieceTable != null ? pieceTable.size() : publishedSize;
         }
 
         @Override
         public String getElementAt(int index) {
-            if (index < 0 || index >= lineOffsets.size()) {
+            if (pieceTable == null) {
+                return readOriginalLine(index);
+            }
+            if (index < 0 || index >= pieceTable.size()) {
                 return null;
             }
-            try {
-                long start = lineOffsets.get(index);
-                file.seek(start);
+            String added = pieceTable.addedLine(index);
+            if (added == null) {
+                return readOriginalLine(pieceTable.originalLine(index));
+            }
+            return columnOffset == 0 ? added : added.substring((int) Math.min(added.length(), columnOffset));
+        }
 
-                // 读取直到换行符或文件结束符
-                byte[] buffer = new byte[1024]; // 根据需要调整缓冲区大小
-                int bytesRead;
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                boolean eol = false;
-                while ((bytesRead = file.read(buffer)) != -1 && !eol) {
-                    for (int i = 0; i < bytesRead; i++) {
-                        if (buffer[i] == '\n') {
-                            baos.write(buffer, 0, i);
-                            eol = true;
-                            break;
-                        }
-                    }
-                    if (!eol) {
-                        baos.write(buffer, 0, bytesRead);
+        /**
+         * 读取原文件中一行在当前水平位置的窗口 (经过块缓存)
+         */
+        public String readOriginalLine(int index) {
+            if (index < 0 || index >= publishedSize) {
+                return null;
+            }
+            int blockIndex = index / BLOCK_LINES;
+            try {
+                BlockRange range = blockRange(blockIndex);
+                String line;
+                if (range.length() > MAX_BLOCK_BYTES) {
+                    line = readWindow(range.offsets, index);
+                } else {
+                    LineBlock block = getCachedBlock(blockIndex, range);
+                    if (block == null) {
+                        block = loadBlock(range);
+                        cacheBlock(blockIndex, block);
                     }
+                    line = block.window(index - range.firstLine, columnOffset);
                 }
-                 return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+                prefetch(blockIndex);
+                return line;
             } catch (IOException e) {
                 e.printStackTrace();
                 return "读取行错误 " + index;
             }
         }
 
+        /**
+         * 计算某一块当前对应的行和字节范围 (只能在 EDT 上调用)
+         */
+        private BlockRange blockRange(int blockIndex) throws IOException {
+            LineOffsetIndex offsets = lineOffsets;
+            int firstLine = blockIndex * BLOCK_LINES;
+            int lineCount = Math.min(BLOCK_LINES, publishedSize - firstLine);
+            int nextLine = firstLine + lineCount;
+            long start = offsets.get(firstLine);
+            long end;
+            if (nextLine < offsets.size()) {
+                end = offsets.get(nextLine);
+            } else {
+                end = channel.size();
+            }
+            return new BlockRange(generation, offsets, firstLine, lineCount, start, Math.max(start, end));
+        }
+
+        private LineBlock getCachedBlock(int blockIndex, BlockRange range) {
+            synchronized (blockCache) {
+                LineBlock block = blockCache.get(blockIndex);
+                // 块内行数或结束位置变化 (仍在索引或文件仍在增长) 时缓存失效
+                return block != null && block.matches(range) ? block : null;
+            }
+        }
+
+        private void cacheBlock(int blockIndex, LineBlock block) {
+            synchronized (blockCache) {
+                if (block.range.generation == generation) {
+                    blockCache.put(blockIndex, block);
+                }
+            }
+        }
+
+        /**
+         * 沿滚动方向在后台预读下一块
+         */
+        private void prefetch(int blockIndex) throws IOException {
+            int direction = Integer.compare(blockIndex, lastBlockIndex);
+            lastBlockIndex = blockIndex;
+            int next = blockIndex + direction;
+            if (direction == 0 || next < 0 || next * BLOCK_LINES >= publishedSize) {
+                return;
+            }
+            BlockRange range = blockRange(next);
+            if (range.length() > MAX_BLOCK_BYTES || getCachedBlock(next, range) != null) {
+                return;
+            }
+            PREFETCH_EXECUTOR.submit(() -> {
+                try {
+                    if (getCachedBlock(next, range) == null) {
+                        cacheBlock(next, loadBlock(range));
+                    }
+                } catch (IOException e) {
+                    // 预读失败不影响显示，真正需要时会重新读取
+                }
+            });
+        }
 
+        /**
+         * 一次读取整块并按索引切分为行，可在任意线程调用
+         */
+        private LineBlock loadBlock(BlockRange range) throws IOException {
+            byte[] bytes = new byte[(int) range.length()];
+            int length = read(ByteBuffer.wrap(bytes), range.start);
+            int[] starts = new int[range.lineCount];
+            int[] ends = new int[range.lineCount];
+            for (int i = 0; i < starts.length; i++) {
+                int lineStart = (int) Math.min(length, range.offsets.get(range.firstLine + i) - range.start);
+                int lineEnd = i + 1 < starts.length
+                        ? (int) Math.min(length, range.offsets.get(range.firstLine + i + 1) - range.start)
+                        : length;
+                if (lineEnd > lineStart && bytes[lineEnd - 1] == '\n') {
+                    lineEnd--;
+                }
+                starts[i] = lineStart;
+                ends[i] = lineEnd;
+            }
+            return new LineBlock(range, bytes, starts, ends);
+        }
+
+        /**
+         * 只读取一行在当前水平位置的窗口，用于行特别长、不适合整块缓存的情况，开销与行长无关
+         */
+        private String readWindow(LineOffsetIndex offsets, int index) throws IOException {
+            long start = offsets.get(index);
+            long end = originalLineEnd(offsets, index);
+            long from = start + Math.min(columnOffset, end - start);
+            long to = Math.min(end, from + WINDOW_BYTES);
+            ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+            int length = read(buffer, from);
+            return decodeWindow(buffer.array(), 0, length, columnOffset > 0 && from < end, from + length < end);
+        }
+
+        /**
+         * @return 原文件中一行内容的结束位置 (不含换行符)
+         */
+        private long originalLineEnd(LineOffsetIndex offsets, int index) throws IOException {
+            return index + 1 < offsets.size() ? offsets.get(index + 1) - 1 : channel.size();
+        }
+
+        /**
+         * 从指定位置读满缓冲区或读到文件末尾，可在任意线程并发调用
+         * @return 实际读取的字节数
+         */
+        private int read(ByteBuffer buffer, long position) throws IOException {
+            int start = buffer.position();
+            FileChannel current = channel;
+            while (buffer.hasRemaining()) {
+                int bytesRead;
+                try {
+                    bytesRead = current.read(buffer, position + buffer.position() - start);
+                } catch (ClosedByInterruptException e) {
+                    // 读取线程被中断会关闭整个通道，为其它读取者重新打开后再抛出
+                    reopen(current);
+                    throw e;
+                }
+                if (bytesRead == -1) {
+                    break;
+                }
+            }
+            return buffer.position() - start;
+        }
+
+        private synchronized void reopen(FileChannel closed) throws IOException {
+            if (!released && channel == closed) {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            }
+        }
+    }
+
+    /**
+     * 一块的行范围和字节范围快照
+     */
+    private static class BlockRange {
+        private final int generation;
+        private final LineOffsetIndex offsets;
+        private final int firstLine;
+        private final int lineCount;
+        private final long start;
+        private final long end;
+
+        BlockRange(int generation, LineOffsetIndex offsets, int firstLine, int lineCount, long start, long end) {
+            this.generation = generation;
+            this.offsets = offsets;
+            this.firstLine = firstLine;
+            this.lineCount = lineCount;
+            this.start = start;
+            this.end = end;
+        }
+
+        long length() {
+            return end - start;
+        }
+    }
+
+    /**
+     * 把一行中 [from, to) 范围的字节解码为显示文本，被截断的一侧加上省略号
+     */
+    private static String decodeWindow(byte[] bytes, int from, int to, boolean truncatedLeft, boolean truncatedRight) {
+        // 窗口起点落在多字节字符中间时跳到下一个字符
+        while (truncatedLeft && from < to && (bytes[from] & 0xC0) == 0x80) {
+            from++;
+        }
+        String text = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+        if (truncatedLeft) {
+            text = "…" + text;
+        }
+        if (truncatedRight) {
+            text = text + "…";
+        }
+        return text;
+    }
+
+    /**
+     * 一块行的原始字节，按水平位置解码出显示的窗口
+     */
+    private static class LineBlock {
+        private final BlockRange range;
+        private final byte[] bytes;
+        private final int[] starts;
+        private final int[] ends;
+        // 当前水平位置下已解码的行，只在 EDT 上访问
+        private String[] windows;
+        private long windowColumn = -1;
+
+        LineBlock(BlockRange range, byte[] bytes, int[] starts, int[] ends) {
+            this.range = range;
+            this.bytes = bytes;
+            this.starts = starts;
+            this.ends = ends;
+        }
+
+        String window(int i, long column) {
+            if (column != windowColumn) {
+                windows = new String[starts.length];
+                windowColumn = column;
+            }
+            if (windows[i] == null) {
+                int from = (int) Math.min(ends[i], starts[i] + column);
+                int to = (int) Math.min(ends[i], (long) from + FileLineListModel.WINDOW_BYTES);
+                windows[i] = decodeWindow(bytes, from, to, column > 0 && from < ends[i], to < ends[i]);
+            }
+            return windows[i];
+        }
+
+        boolean matches(BlockRange other) {
+            return range.generation == other.generation && range.lineCount == other.lineCount
+                    && range.start == other.start && range.end == other.end;
+        }
     }
 
     // 自定义CellRenderer以显示行号和内容
     private static class LineCellRenderer extends DefaultListCellRenderer {
+        private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
         @Override
         public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
             JLabel label = (JLabel) super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
             label.setText(" " + (index + 1) + "  " + value.toString());
-            label.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            label.setFont(FONT);
             return label;
         }
     }
@@ -0,0 +1,253 @@
+package com.lfs.ui;
+
+import com.lfs.service.FileSearchService;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 大文件查找对话框
+ * 在后台多线程搜索 VirtualEditorPanel 打开的文件，结果按文件顺序逐批加入列表，
+ * 搜索过程中即可点击结果跳转，也可以随时停止
+ */
+public class VirtualSearchDialog extends JDialog {
+
+    private static final int PREVIEW_LENGTH = 200;
+    private static final Font HIT_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
+    private final VirtualEditorPanel editorPanel;
+    private final FileSearchService searchService = new FileSearchService();
+    private final JTextField findField;
+    private final JCheckBox regexCheckBox;
+    private final JCheckBox matchCaseCheckBox;
+    private final JButton searchButton;
+    private final JLabel statusLabel;
+    private final HitListModel hitListModel = new HitListModel();
+
+    private SwingWorker<Integer, long[]> searchWorker;
+    private AtomicBoolean searchCancelled;
+
+    public VirtualSearchDialog(Frame owner, VirtualEditorPanel editorPanel) {
+        super(owner, "在文件中查找", false);
+        this.editorPanel = editorPanel;
+
+        // --- UI 组件 ---
+        findField = new JTextField(24);
+        regexCheckBox = new JCheckBox("正则表达式");
+        matchCaseCheckBox = new JCheckBox("区分大小写");
+        searchButton = new JButton("搜索");
+        statusLabel = new JLabel(" ");
+
+        JList<Long> hitList = new JList<>(hitListModel);
+        hitList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        hitList.setFixedCellHeight(16);
+        hitList.setCellRenderer(new HitCellRenderer());
+        JScrollPane hitScrollPane = new JScrollPane(hitList);
+        hitScrollPane.setPreferredSize(new Dimension(600, 300));
+
+        // --- 布局 ---
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        searchPanel.add(new JLabel("查找:"));
+        searchPanel.add(findField);
+        searchPanel.add(regexCheckBox);
+        searchPanel.add(matchCaseCheckBox);
+        searchPanel.add(searchButton);
+
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(searchPanel, BorderLayout.NORTH);
+        panel.add(hitScrollPane, BorderLayout.CENTER);
+        panel.add(statusLabel, BorderLayout.SOUTH);
+
+        // --- 监听器 ---
+        searchButton.addActionListener(e -> {
+            if (isSearching()) {
+                stopSearch();
+            } else {
+                startSearch();
+            }
+        });
+        findField.addActionListener(e -> startSearch()); // 处理 Enter 键
+        hitList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting() && hitList.getSelectedIndex() >= 0) {
+                editorPanel.goToLine(editorPanel.getLineOfOffset(hitListModel.getOffset(hitList.getSelectedIndex())));
+            }
+        });
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent windowEvent) {
+                stopSearch();
+            }
+        });
+
+        // --- 对话框设置 ---
+        getContentPane().add(panel);
+        pack();
+        setLocationRelativeTo(owner);
+        setDefaultCloseOperation(JDialog.HIDE_ON_CLOSE);
+    }
+
+    private boolean isSearching() {
+        return searchWorker != null && !searchWorker.isDone();
+    }
+
+    private void startSearch() {
+        String text = findField.getText();
+        if (text.isEmpty()) {
+            statusLabel.setText("请输入查找内容");
+            return;
+        }
+        File file = editorPanel.getCurrentFile();
+        if (file == null || !editorPanel.isIndexComplete()) {
+            statusLabel.setText("文件仍在加载，请稍后再搜索");
+            return;
+        }
+        if (editorPanel.isModified()) {
+            // 搜索的是磁盘上的文件，编辑后行号对不上
+            statusLabel.setText("请先保存修改再搜索");
+            return;
+        }
+        stopSearch();
+        hitListModel.clear();
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        boolean regex = regexCheckBox.isSelected();
+        boolean matchCase = matchCaseCheckBox.isSelected();
+        searchCancelled = cancelled;
+        searchButton.setText("停止");
+        statusLabel.setText("正在搜索...");
+
+        searchWorker = new SwingWorker<Integer, long[]>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                return searchService.search(file, text, regex, matchCase,
+                        (offsets, count) -> publish(Arrays.copyOf(offsets, count)), cancelled);
+            }
+
+            @Override
+            protected void process(List<long[]> chunks) {
+                if (searchCancelled != cancelled) {
+                    return;
+                }
+                for (long[] offsets : chunks) {
+                    hitListModel.addAll(offsets);
+                }
+                statusLabel.setText("正在搜索... 已找到 " + hitListModel.getSize() + " 个结果");
+            }
+
+            @Override
+            protected void done() {
+                if (searchCancelled != cancelled) {
+                    return;
+                }
+                searchButton.setText("搜索");
+                try {
+                    int total = get();
+                    if (total >= FileSearchService.MAX_HITS) {
+                        statusLabel.setText("结果过多，只显示前 " + total + " 个");
+                    } else {
+                        statusLabel.setText(total == 0 ? "未找到匹配项" : "共找到 " + total + " 个结果");
+                    }
+                } catch (java.util.concurrent.CancellationException e) {
+                    statusLabel.setText("已停止，找到 " + hitListModel.getSize() + " 个结果");
+                } catch (java.util.concurrent.ExecutionException e) {
+                    if (e.getCause() instanceof PatternSyntaxException) {
+                        statusLabel.setText("正则表达式错误");
+                    } else {
+                        statusLabel.setText("搜索失败: " + e.getCause().getMessage());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        searchWorker.execute();
+    }
+
+    private void stopSearch() {
+        if (isSearching()) {
+            searchCancelled.set(true);
+            searchWorker.cancel(true);
+            searchButton.setText("搜索");
+            statusLabel.setText("已停止，找到 " + hitListModel.getSize() + " 个结果");
+        }
+    }
+
+    @Override
+    public void setVisible(boolean visible) {
+        super.setVisible(visible);
+        if (visible) {
+            findField.requestFocusInWindow();
+            findField.selectAll();
+        }
+    }
+
+    /**
+     * 命中位置列表模型，使用 long 数组按批追加
+     */
+    private static class HitListModel extends AbstractListModel<Long> {
+        private long[] offsets = new long[256];
+        private int size;
+
+        void addAll(long[] newOffsets) {
+            if (newOffsets.length == 0) {
+                return;
+            }
+            if (size + newOffsets.length > offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, size + newOffsets.length));
+            }
+            System.arraycopy(newOffsets, 0, offsets, size, newOffsets.length);
+            int oldSize = size;
+            size += newOffsets.length;
+            fireIntervalAdded(this, oldSize, size - 1);
+        }
+
+        void clear() {
+            int oldSize = size;
+            size = 0;
+            if (oldSize > 0) {
+                fireIntervalRemoved(this, 0, oldSize - 1);
+            }
+        }
+
+        long getOffset(int index) {
+            return offsets[index];
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public Long getElementAt(int index) {
+            return offsets[index];
+        }
+    }
+
+    /**
+     * 显示命中所在的行号和行内容
+     */
+    private class HitCellRenderer extends DefaultListCellRenderer {
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            JLabel label = (JLabel) super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            int line = editorPanel.getLineOfOffset((Long) value);
+            String text = editorPanel.getLineText(line);
+            if (text == null) {
+                text = "";
+            } else if (text.length() > PREVIEW_LENGTH) {
+                text = text.substring(0, PREVIEW_LENGTH) + "...";
+            }
+            label.setText(" " + (line + 1) + ":  " + text.trim());
+            label.setFont(HIT_FONT);
+            return label;
+        }
+    }
+}
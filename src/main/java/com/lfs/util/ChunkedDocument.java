@@ -0,0 +1,263 @@
+package com.lfs.util;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.undo.AbstractUndoableEdit;
+
+/**
+ * 基于 ChunkedTextContent 的纯文本文档
+ * PlainDocument 为每一行维护一个 Element 和两个 Position，几百万行的文件仅行结构就要占用上百 MB，
+ * 插入换行时还要移动整个行数组。这里的行元素不做保存，按行号或位置查询时由内容中的换行符计数现场生成，
+ * 行数、行定位都是对数时间
+ */
+public class ChunkedDocument extends AbstractDocument {
+
+    private final LineRoot root = new LineRoot();
+
+    public ChunkedDocument() {
+        super(new ChunkedTextContent());
+        putProperty(PlainDocument.tabSizeAttribute, 4);
+    }
+
+    private ChunkedTextContent content() {
+        return (ChunkedTextContent) getContent();
+    }
+
+    @Override
+    public Element getDefaultRootElement() {
+        return root;
+    }
+
+    @Override
+    public Element getParagraphElement(int pos) {
+        return root.getElement(root.getElementIndex(pos));
+    }
+
+    @Override
+    protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr) {
+        // 内容已插入，插入的文本含换行时把受影响的行记入事件，视图据此重排
+        int offset = chng.getOffset();
+        int firstLine = root.getElementIndex(offset);
+        int lastLine = root.getElementIndex(offset + chng.getLength());
+        if (lastLine > firstLine) {
+            Element[] removed = {lineElement(lineStart(firstLine), lineEnd(lastLine) - chng.getLength())};
+            Element[] added = new Element[lastLine - firstLine + 1];
+            for (int i = 0; i < added.length; i++) {
+                added[i] = root.getElement(firstLine + i);
+            }
+            chng.addEdit(new LineEdit(firstLine, removed, added));
+        }
+        super.insertUpdate(chng, attr);
+    }
+
+    @Override
+    protected void removeUpdate(DefaultDocumentEvent chng) {
+        // 内容尚未删除，删除范围跨行时记录被合并的行
+        int offset = chng.getOffset();
+        int firstLine = root.getElementIndex(offset);
+        int lastLine = root.getElementIndex(offset + chng.getLength());
+        if (lastLine > firstLine) {
+            Element[] removed = new Element[lastLine - firstLine + 1];
+            for (int i = 0; i < removed.length; i++) {
+                removed[i] = root.getElement(firstLine + i);
+            }
+            int end = lineEnd(lastLine) - chng.getLength();
+            Element[] added = {lineElement(lineStart(firstLine), end)};
+            chng.addEdit(new LineEdit(firstLine, removed, added));
+        }
+        super.removeUpdate(chng);
+    }
+
+    private int lineStart(int line) {
+        return line == 0 ? 0 : content().newlineOffset(line - 1) + 1;
+    }
+
+    private int lineEnd(int line) {
+        return content().newlineOffset(line) + 1;
+    }
+
+    private Element lineElement(int start, int end) {
+        return new LineElement(start, end);
+    }
+
+    /**
+     * 根元素，子元素 (行) 在访问时生成
+     */
+    private class LineRoot implements Element {
+        @Override
+        public Document getDocument() {
+            return ChunkedDocument.this;
+        }
+
+        @Override
+        public Element getParentElement() {
+            return null;
+        }
+
+        @Override
+        public String getName() {
+            return ParagraphElementName;
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getEndOffset() {
+            return getLength() + 1;
+        }
+
+        @Override
+        public int getElementIndex(int offset) {
+            ChunkedTextContent content = content();
+            return Math.max(0, Math.min(content.newlinesBefore(offset), content.newlineCount() - 1));
+        }
+
+        @Override
+        public int getElementCount() {
+            return content().newlineCount();
+        }
+
+        @Override
+        public Element getElement(int index) {
+            if (index < 0 || index >= getElementCount()) {
+                return null;
+            }
+            return lineElement(lineStart(index), lineEnd(index));
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return false;
+        }
+    }
+
+    /**
+     * 行元素，生成时的快照，文档修改后不会更新
+     */
+    private class LineElement implements Element {
+        private final int start;
+        private final int end;
+
+        LineElement(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Document getDocument() {
+            return ChunkedDocument.this;
+        }
+
+        @Override
+        public Element getParentElement() {
+            return root;
+        }
+
+        @Override
+        public String getName() {
+            return ContentElementName;
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return start;
+        }
+
+        @Override
+        public int getEndOffset() {
+            return end;
+        }
+
+        @Override
+        public int getElementIndex(int offset) {
+            return -1;
+        }
+
+        @Override
+        public int getElementCount() {
+            return 0;
+        }
+
+        @Override
+        public Element getElement(int index) {
+            return null;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return true;
+        }
+    }
+
+    /**
+     * 行结构变化，撤销/重做时行由内容自动恢复，这里只需交换新增和删除的行供视图使用
+     * (AbstractDocument.ElementEdit 在撤销时要求父元素是 BranchElement，不能直接使用)
+     */
+    private class LineEdit extends AbstractUndoableEdit implements DocumentEvent.ElementChange {
+        private final int index;
+        private Element[] removed;
+        private Element[] added;
+
+        LineEdit(int index, Element[] removed, Element[] added) {
+            this.index = index;
+            this.removed = removed;
+            this.added = added;
+        }
+
+        @Override
+        public Element getElement() {
+            return root;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public Element[] getChildrenRemoved() {
+            return removed;
+        }
+
+        @Override
+        public Element[] getChildrenAdded() {
+            return added;
+        }
+
+        @Override
+        public void undo() {
+            super.undo();
+            swap();
+        }
+
+        @Override
+        public void redo() {
+            super.redo();
+            swap();
+        }
+
+        private void swap() {
+            Element[] temp = removed;
+            removed = added;
+            added = temp;
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package com.lfs.util;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 分块存储的文档内容
+ * 文本切分为不超过 MAX_CHUNK 个字符的分块，分块长度和分块内的换行数各用一棵树状数组 (Fenwick tree) 维护前缀和，
+ * 按字符位置或按行号定位分块都是对数时间；插入和删除只复制所在的分块，只有分块拆分或合并时才重建树状数组。
+ * 与 GapContent 一样在末尾隐含一个换行符。只能在文档锁内访问
+ */
+public class ChunkedTextContent implements AbstractDocument.Content {
+
+    // 分块的最大字符数，编辑的开销与它成正比
+    private static final int MAX_CHUNK = 16 * 1024;
+    // 删除后小于该长度的分块尝试与下一块合并，避免分块数量无限增长
+    private static final int MIN_CHUNK = MAX_CHUNK / 16;
+
+    private final List<Chunk> chunks = new ArrayList<>();
+    // 树状数组，下标从 1 开始
+    private int[] charTree;
+    private int[] newlineTree;
+    private int length;
+    private int newlines;
+
+    // Position 只被高亮、书签等少量对象使用，弱引用保存，被回收后在更新时清理
+    private final List<WeakReference<Mark>> marks = new ArrayList<>();
+
+    public ChunkedTextContent() {
+        chunks.add(new Chunk(new char[]{'\n'}, 0, 1));
+        length = 1;
+        newlines = 1;
+        rebuild();
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return 换行符总数 (包括末尾隐含的换行符)，即文档的行数
+     */
+    public int newlineCount() {
+        return newlines;
+    }
+
+    /**
+     * @return [0, offset) 之间的换行符数量，即 offset 所在的行号
+     */
+    public int newlinesBefore(int offset) {
+        if (offset >= length) {
+            return newlines;
+        }
+        int index = chunkOf(charTree, offset);
+        int local = offset - prefix(charTree, index);
+        return prefix(newlineTree, index) + chunks.get(index).newlinesBefore(local);
+    }
+
+    /**
+     * @param n 换行符序号 (从 0 开始)
+     * @return 第 n 个换行符的位置
+     */
+    public int newlineOffset(int n) {
+        int index = chunkOf(newlineTree, n);
+        int local = n - prefix(newlineTree, index);
+        return prefix(charTree, index) + chunks.get(index).newlineAt(local);
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        if (where < 0 || where >= length) {
+            throw new BadLocationException("Invalid insert", where);
+        }
+        if (str.isEmpty()) {
+            return null;
+        }
+        int index = chunkOf(charTree, where);
+        int local = where - prefix(charTree, index);
+        Chunk chunk = chunks.get(index);
+        int addedNewlines;
+        if (chunk.length + str.length() <= MAX_CHUNK) {
+            addedNewlines = chunk.insert(local, str);
+            update(charTree, index, str.length());
+            update(newlineTree, index, addedNewlines);
+        } else {
+            // 所在分块放不下，与插入的文本合并后重新均匀切分
+            char[] merged = new char[chunk.length + str.length()];
+            System.arraycopy(chunk.data, 0, merged, 0, local);
+            str.getChars(0, str.length(), merged, local);
+            System.arraycopy(chunk.data, local, merged, local + str.length(), chunk.length - local);
+            addedNewlines = countNewlines(merged, 0, merged.length) - chunk.newlines;
+            chunks.remove(index);
+            chunks.addAll(index, split(merged));
+            rebuild();
+        }
+        length += str.length();
+        newlines += addedNewlines;
+        updateMarksForInsert(where, str.length());
+        return new InsertUndo(where, str.length());
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        // 末尾隐含的换行符不能删除
+        if (where < 0 || nitems < 0 || where + nitems >= length) {
+            throw new BadLocationException("Invalid remove", where + nitems);
+        }
+        if (nitems == 0) {
+            return null;
+        }
+        String removed = getString(where, nitems);
+        int index = chunkOf(charTree, where);
+        int local = where - prefix(charTree, index);
+        int remaining = nitems;
+        boolean structural = false;
+        int first = index;
+        while (remaining > 0) {
+            Chunk chunk = chunks.get(index);
+            int count = Math.min(remaining, chunk.length - local);
+            int removedNewlines = chunk.delete(local, count);
+            newlines -= removedNewlines;
+            if (chunk.length == 0) {
+                chunks.remove(index);
+                structural = true;
+            } else {
+                if (!structural) {
+                    update(charTree, index, -count);
+                    update(newlineTree, index, -removedNewlines);
+                }
+                index++;
+            }
+            remaining -= count;
+            local = 0;
+        }
+        length -= nitems;
+        structural |= mergeSmall(Math.min(first, chunks.size() - 1));
+        if (structural) {
+            rebuild();
+        }
+        updateMarksForRemove(where, nitems);
+        return new RemoveUndo(where, removed);
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        Segment segment = new Segment();
+        getChars(where, len, segment);
+        return new String(segment.array, segment.offset, segment.count);
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length) {
+            throw new BadLocationException("Invalid location", where + len);
+        }
+        if (len == 0) {
+            txt.array = new char[0];
+            txt.offset = 0;
+            txt.count = 0;
+            return;
+        }
+        int index = chunkOf(charTree, where);
+        int local = where - prefix(charTree, index);
+        Chunk chunk = chunks.get(index);
+        // 范围在一个分块内，或调用方接受部分返回时直接引用分块数组，不复制
+        if (local + len <= chunk.length || txt.isPartialReturn()) {
+            txt.array = chunk.data;
+            txt.offset = local;
+            txt.count = Math.min(len, chunk.length - local);
+            return;
+        }
+        char[] out = new char[len];
+        int copied = 0;
+        while (copied < len) {
+            chunk = chunks.get(index++);
+            int count = Math.min(len - copied, chunk.length - local);
+            System.arraycopy(chunk.data, local, out, copied, count);
+            copied += count;
+            local = 0;
+        }
+        txt.array = out;
+        txt.offset = 0;
+        txt.count = len;
+    }
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        if (offset < 0 || offset > length) {
+            throw new BadLocationException("Invalid position", offset);
+        }
+        Mark mark = new Mark(offset);
+        marks.add(new WeakReference<>(mark));
+        return mark;
+    }
+
+    private void updateMarksForInsert(int where, int count) {
+        // 与 StringContent 一致：位置 0 的标记保持在文档开头，其余位于插入点及之后的标记后移
+        int from = where == 0 ? 1 : where;
+        Iterator<WeakReference<Mark>> iterator = marks.iterator();
+        while (iterator.hasNext()) {
+            Mark mark = iterator.next().get();
+            if (mark == null) {
+                iterator.remove();
+            } else if (mark.offset >= from) {
+                mark.offset += count;
+            }
+        }
+    }
+
+    private void updateMarksForRemove(int where, int count) {
+        int end = where + count;
+        Iterator<WeakReference<Mark>> iterator = marks.iterator();
+        while (iterator.hasNext()) {
+            Mark mark = iterator.next().get();
+            if (mark == null) {
+                iterator.remove();
+            } else if (mark.offset >= end) {
+                mark.offset -= count;
+            } else if (mark.offset >= where) {
+                mark.offset = where;
+            }
+        }
+    }
+
+    /**
+     * 把过小的分块与下一块合并
+     * @return 是否发生了合并
+     */
+    private boolean mergeSmall(int index) {
+        if (index < 0 || index + 1 >= chunks.size()) {
+            return false;
+        }
+        Chunk chunk = chunks.get(index);
+        Chunk next = chunks.get(index + 1);
+        if (chunk.length >= MIN_CHUNK || chunk.length + next.length > MAX_CHUNK) {
+            return false;
+        }
+        chunk.insert(chunk.length, new String(next.data, 0, next.length));
+        chunks.remove(index + 1);
+        return true;
+    }
+
+    /**
+     * 把文本均匀切分为不超过 MAX_CHUNK 的分块
+     */
+    private static List<Chunk> split(char[] text) {
+        int count = (text.length + MAX_CHUNK - 1) / MAX_CHUNK;
+        List<Chunk> result = new ArrayList<>(count);
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int end = (int) ((long) text.length * (i + 1) / count);
+            result.add(new Chunk(text, start, end - start));
+            start = end;
+        }
+        return result;
+    }
+
+    private void rebuild() {
+        int n = chunks.size();
+        charTree = new int[n + 1];
+        newlineTree = new int[n + 1];
+        for (int i = 1; i <= n; i++) {
+            Chunk chunk = chunks.get(i - 1);
+            charTree[i] += chunk.length;
+            newlineTree[i] += chunk.newlines;
+            int parent = i + (i & -i);
+            if (parent <= n) {
+                charTree[parent] += charTree[i];
+                newlineTree[parent] += newlineTree[i];
+            }
+        }
+    }
+
+    private static void update(int[] tree, int index, int delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return 前 count 个分块之和
+     */
+    private static int prefix(int[] tree, int count) {
+        int sum = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return 前缀和不超过 value 的分块数，即 value 落在哪一块 (超出总和时返回最后一块)
+     */
+    private static int chunkOf(int[] tree, int value) {
+        int n = tree.length - 1;
+        int position = 0;
+        for (int step = Integer.highestOneBit(n); step > 0; step >>= 1) {
+            if (position + step <= n && tree[position + step] <= value) {
+                position += step;
+                value -= tree[position];
+            }
+        }
+        return Math.min(position, n - 1);
+    }
+
+    private static int countNewlines(char[] data, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (data[i] == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 一个分块，分块内换行符的位置在需要时才计算
+     */
+    private static final class Chunk {
+        private char[] data;
+        private int length;
+        private int newlines;
+        private int[] newlineOffsets;
+
+        Chunk(char[] source, int from, int count) {
+            data = Arrays.copyOfRange(source, from, from + count);
+            length = count;
+            newlines = countNewlines(data, 0, count);
+        }
+
+        int insert(int at, String str) {
+            int count = str.length();
+            if (length + count > data.length) {
+                data = Arrays.copyOf(data, Math.min(MAX_CHUNK, Math.max(length + count, length + length / 2)));
+            }
+            System.arraycopy(data, at, data, at + count, length - at);
+            str.getChars(0, count, data, at);
+            length += count;
+            int added = countNewlines(data, at, at + count);
+            newlines += added;
+            newlineOffsets = null;
+            return added;
+        }
+
+        int delete(int at, int count) {
+            int removed = countNewlines(data, at, at + count);
+            System.arraycopy(data, at + count, data, at, length - at - count);
+            length -= count;
+            newlines -= removed;
+            newlineOffsets = null;
+            return removed;
+        }
+
+        int newlineAt(int n) {
+            return offsets()[n];
+        }
+
+        int newlinesBefore(int local) {
+            int[] offsets = offsets();
+            int index = Arrays.binarySearch(offsets, 0, newlines, local);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        private int[] offsets() {
+            if (newlineOffsets == null) {
+                int[] offsets = new int[newlines];
+                int n = 0;
+                for (int i = 0; i < length; i++) {
+                    if (data[i] == '\n') {
+                        offsets[n++] = i;
+                    }
+                }
+                newlineOffsets = offsets;
+            }
+            return newlineOffsets;
+        }
+    }
+
+    private static final class Mark implements Position {
+        private int offset;
+
+        Mark(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public int getOffset() {
+            return offset;
+        }
+    }
+
+    private class InsertUndo extends AbstractUndoableEdit {
+        private final int offset;
+        private final int count;
+        private String text;
+
+        InsertUndo(int offset, int count) {
+            this.offset = offset;
+            this.count = count;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+                text = getString(offset, count);
+                remove(offset, count);
+            } catch (BadLocationException e) {
+                throw new CannotUndoException();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+                insertString(offset, text);
+                text = null;
+            } catch (BadLocationException e) {
+                throw new CannotRedoException();
+            }
+        }
+    }
+
+    private class RemoveUndo extends AbstractUndoableEdit {
+        private final int offset;
+        private final String text;
+
+        RemoveUndo(int offset, String text) {
+            this.offset = offset;
+            this.text = text;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+                insertString(offset, text);
+            } catch (BadLocationException e) {
+                throw new CannotUndoException();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+                remove(offset, text.length());
+            } catch (BadLocationException e) {
+                throw new CannotRedoException();
+            }
+        }
+    }
+}
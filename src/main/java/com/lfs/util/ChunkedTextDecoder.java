@@ -0,0 +1,87 @@
+package com.lfs.util;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * 分块读取文本时使用的流式解码器
+ * 被块边界截断的多字节字符会保留到下一块一起解码，不会被替换成乱码；
+ * 字节和字符缓冲区在各次调用之间复用。非线程安全，每个加载任务使用自己的实例
+ */
+public class ChunkedTextDecoder {
+
+    private final CharsetDecoder decoder;
+    // 写模式，开头是上一块末尾未能解码的字节
+    private ByteBuffer input;
+    private CharBuffer output;
+
+    /**
+     * @param charset   字符集，无效字节替换为替换字符
+     * @param chunkSize 每次传入的字节数，用于预分配缓冲区
+     */
+    public ChunkedTextDecoder(Charset charset, int chunkSize) {
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        // 留出余量给上一块遗留的不完整字符
+        this.input = ByteBuffer.allocate(chunkSize + 16);
+        this.output = CharBuffer.allocate((int) (input.capacity() * (double) decoder.maxCharsPerByte()) + 1);
+    }
+
+    /**
+     * 解码下一块字节
+     * @return 本块能完整解码的字符，在下一次调用前有效
+     */
+    public CharBuffer decode(byte[] bytes, int offset, int length) {
+        if (input.remaining() < length) {
+            ByteBuffer grown = ByteBuffer.allocate(input.position() + length + 16);
+            input.flip();
+            grown.put(input);
+            input = grown;
+        }
+        input.put(bytes, offset, length);
+        input.flip();
+        output.clear();
+        decodeInto(false);
+        // 未解码完的字节移到开头，和下一块拼在一起
+        input.compact();
+        output.flip();
+        return output;
+    }
+
+    /**
+     * 输入结束，解码剩余的字节 (不完整的字符会被替换)
+     * @return 剩余的字符，在下一次调用前有效
+     */
+    public CharBuffer finish() {
+        input.flip();
+        output.clear();
+        decodeInto(true);
+        while (decoder.flush(output).isOverflow()) {
+            growOutput();
+        }
+        input.clear();
+        decoder.reset();
+        output.flip();
+        return output;
+    }
+
+    private void decodeInto(boolean endOfInput) {
+        CoderResult result = decoder.decode(input, output, endOfInput);
+        while (result.isOverflow()) {
+            growOutput();
+            result = decoder.decode(input, output, endOfInput);
+        }
+    }
+
+    private void growOutput() {
+        CharBuffer grown = CharBuffer.allocate(output.capacity() * 2);
+        output.flip();
+        grown.put(output);
+        output = grown;
+    }
+}
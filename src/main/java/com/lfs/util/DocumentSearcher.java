@@ -0,0 +1,201 @@
+package com.lfs.util;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 在 Document 上查找
+ * 按窗口把文档读入 Segment 再匹配：窗口不跨间隙缓冲区时直接引用文档内部数组，否则只复制一个窗口，
+ * 不会像 getText() 那样复制整个文档。匹配的起点必须在窗口内，终点最多可以越过窗口 LOOKAHEAD_CHARS 个字符。
+ * 普通文本用 LiteralSearcher 直接在 Segment 的数组上查找，正则表达式用 Matcher。
+ * 非线程安全，每次查找使用自己的实例
+ */
+public class DocumentSearcher {
+
+    private static final int WINDOW_CHARS = 1 << 20;
+    // 跨窗口边界的匹配最多可以延伸的长度
+    private static final int LOOKAHEAD_CHARS = 64 << 10;
+    // 窗口前额外读入的字符，供 \b、环视等判断窗口起点之前的内容
+    private static final int LOOKBEHIND_CHARS = 256;
+
+    private final Pattern pattern;
+    private final LiteralSearcher literal;
+    private final Segment segment = new Segment();
+    private Matcher matcher;
+    // 正则替换时 matcher 的追加位置和展开替换文本的缓冲
+    private int appendPosition;
+    private final StringBuilder replacementBuffer = new StringBuilder();
+
+    public DocumentSearcher(Pattern pattern) {
+        this.pattern = pattern;
+        this.literal = null;
+    }
+
+    public DocumentSearcher(LiteralSearcher literal) {
+        this.pattern = null;
+        this.literal = literal;
+    }
+
+    /**
+     * 匹配回调
+     */
+    public interface MatchSink {
+        /**
+         * @return 是否继续查找
+         */
+        boolean accept(int start, int end);
+    }
+
+    /**
+     * 展开当前匹配的替换文本：正则表达式中 $n、${name} 引用分组，普通文本原样返回。
+     * 只能在 MatchSink.accept 回调中调用
+     * @param replacement 替换内容
+     * @return 当前匹配应替换成的文本
+     */
+    public String expandReplacement(String replacement) {
+        if (literal != null) {
+            return replacement;
+        }
+        // appendReplacement 会先追加上次匹配到本次匹配之间的文本，截掉这一段
+        replacementBuffer.setLength(0);
+        int gap = matcher.start() - appendPosition;
+        matcher.appendReplacement(replacementBuffer, replacement);
+        appendPosition = matcher.end();
+        return replacementBuffer.substring(gap);
+    }
+
+    /**
+     * 查找起点不早于 from 的第一个匹配，调用方需持有文档的读锁 (在 EDT 上或 Document.render 中调用)
+     * @return {start, end}，没有匹配时返回 null
+     */
+    public int[] findNext(Document document, int from) throws BadLocationException {
+        int[] found = new int[2];
+        boolean[] hit = new boolean[1];
+        findRange(document, from, document.getLength(), (start, end) -> {
+            found[0] = start;
+            found[1] = end;
+            hit[0] = true;
+            return false;
+        });
+        return hit[0] ? found : null;
+    }
+
+    /**
+     * 查找起点在 [from, to) 内的匹配，调用方需持有文档的读锁
+     * @param sink 匹配回调，按位置顺序调用，返回 false 时停止
+     */
+    public void findRange(Document document, int from, int to, MatchSink sink) throws BadLocationException {
+        int length = document.getLength();
+        int end = Math.min(to, length);
+        int position = Math.max(0, from);
+        boolean[] more = {true};
+        while (position < end && more[0]) {
+            int windowEnd = (int) Math.min(end, (long) position + WINDOW_CHARS);
+            position = scanWindow(document, position, windowEnd, length, (start, matchEnd) -> more[0] = sink.accept(start, matchEnd));
+        }
+    }
+
+    /**
+     * 在后台线程上查找全部匹配，每个窗口在 Document.render 中扫描，窗口之间释放读锁，不阻塞编辑
+     * @param document 文档
+     * @param sink     匹配回调，按位置顺序调用
+     * @param stopped  返回 true 时停止 (取消或文档已被修改)
+     * @return 是否正常结束 (查找完整个文档或回调要求停止)，被 stopped 中止时返回 false
+     */
+    public boolean findAll(Document document, MatchSink sink, BooleanSupplier stopped) {
+        int[] position = {0};
+        boolean[] finished = {false};
+        BadLocationException[] error = new BadLocationException[1];
+        while (!finished[0]) {
+            if (stopped.getAsBoolean()) {
+                return false;
+            }
+            document.render(() -> {
+                // 读锁内再检查一次，文档在两个窗口之间被修改时不再读取
+                if (stopped.getAsBoolean()) {
+                    return;
+                }
+                int length = document.getLength();
+                if (position[0] >= length) {
+                    finished[0] = true;
+                    return;
+                }
+                try {
+                    boolean[] more = {true};
+                    int windowEnd = (int) Math.min(length, (long) position[0] + WINDOW_CHARS);
+                    position[0] = scanWindow(document, position[0], windowEnd, length, (start, end) -> more[0] = sink.accept(start, end));
+                    finished[0] = !more[0];
+                } catch (BadLocationException e) {
+                    error[0] = e;
+                }
+            });
+            if (error[0] != null) {
+                throw new IllegalStateException(error[0]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 扫描起点在 [from, windowEnd) 内的匹配
+     * @return 下一个窗口的起点
+     */
+    private int scanWindow(Document document, int from, int windowEnd, int length, MatchSink sink) throws BadLocationException {
+        int textStart = Math.max(0, from - LOOKBEHIND_CHARS);
+        int lookahead = literal == null ? LOOKAHEAD_CHARS : literal.length();
+        int textEnd = (int) Math.min(length, (long) windowEnd + lookahead);
+        document.getText(textStart, textEnd - textStart, segment);
+        if (literal != null) {
+            return scanLiteral(from, windowEnd, textStart, sink);
+        }
+        appendPosition = 0;
+        if (matcher == null) {
+            matcher = pattern.matcher(segment);
+        } else {
+            matcher.reset(segment);
+        }
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        matcher.region(from - textStart, segment.length());
+
+        int next = windowEnd;
+        while (matcher.find()) {
+            int start = textStart + matcher.start();
+            // 最后一个窗口包含文档末尾的空匹配
+            if (start > windowEnd || (start == windowEnd && windowEnd < length)) {
+                break;
+            }
+            int end = textStart + matcher.end();
+            // 越过窗口的匹配之后从其终点继续，与在整个文档上连续查找的结果一致
+            next = Math.max(windowEnd, end);
+            if (!sink.accept(start, end)) {
+                return next;
+            }
+        }
+        return next;
+    }
+
+    private int scanLiteral(int from, int windowEnd, int textStart, MatchSink sink) {
+        int position = from - textStart;
+        int windowLimit = windowEnd - textStart;
+        int next = windowEnd;
+        while (true) {
+            int found = literal.indexOf(segment, position, windowLimit);
+            if (found < 0) {
+                return next;
+            }
+            // 与 Pattern 一样，匹配互不重叠，从上一个匹配的终点继续
+            position = found + literal.length();
+            int start = textStart + found;
+            int end = textStart + position;
+            next = Math.max(windowEnd, end);
+            if (!sink.accept(start, end)) {
+                return next;
+            }
+        }
+    }
+}
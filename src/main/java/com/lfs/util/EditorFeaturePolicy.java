@@ -0,0 +1,183 @@
+package com.lfs.util;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 编辑器功能降级策略
+ * 根据文本的大小、行数和最长行长度决定是否关闭代码折叠、语法高亮和括号匹配。
+ * 折叠解析每次编辑都要扫描全文，高亮和括号匹配按行工作但超长行 (压缩过的 JS/JSON) 会让每次重绘都重新分词，
+ * 这几种情况分别设置阈值
+ */
+public class EditorFeaturePolicy {
+
+    // 折叠解析器在每次编辑后扫描全文
+    private static final long FOLDING_MAX_CHARS = 5L << 20;
+    private static final int FOLDING_MAX_LINES = 100_000;
+    // 分词按行进行，总量大时滚动仍可接受，超长行每次重绘都要对整行分词
+    private static final long HIGHLIGHT_MAX_CHARS = 20L << 20;
+    private static final int HIGHLIGHT_MAX_LINE_LENGTH = 20_000;
+    // 括号匹配在光标移动时向前后扫描，超长行中可能一次扫描上百万字符
+    private static final long BRACKET_MAX_CHARS = 20L << 20;
+    private static final int BRACKET_MAX_LINE_LENGTH = 5_000;
+
+    private EditorFeaturePolicy() {
+    }
+
+    /**
+     * 统计一段完整文本
+     */
+    public static TextStats measure(CharSequence text) {
+        TextStats stats = new TextStats();
+        stats.accept(text);
+        return stats;
+    }
+
+    /**
+     * 根据文本统计决定启用哪些功能
+     */
+    public static Decision decide(TextStats stats) {
+        Decision decision = new Decision();
+        String size = formatSize(stats.getLength());
+        if (stats.getLength() > HIGHLIGHT_MAX_CHARS) {
+            decision.degrade(Feature.HIGHLIGHTING, "文件 " + size + " 超过 " + formatSize(HIGHLIGHT_MAX_CHARS));
+        } else if (stats.getMaxLineLength() > HIGHLIGHT_MAX_LINE_LENGTH) {
+            decision.degrade(Feature.HIGHLIGHTING, "最长行 " + stats.getMaxLineLength() + " 字符超过 " + HIGHLIGHT_MAX_LINE_LENGTH);
+        }
+        if (stats.getLength() > FOLDING_MAX_CHARS) {
+            decision.degrade(Feature.FOLDING, "文件 " + size + " 超过 " + formatSize(FOLDING_MAX_CHARS));
+        } else if (stats.getLineCount() > FOLDING_MAX_LINES) {
+            decision.degrade(Feature.FOLDING, stats.getLineCount() + " 行超过 " + FOLDING_MAX_LINES + " 行");
+        }
+        if (stats.getLength() > BRACKET_MAX_CHARS) {
+            decision.degrade(Feature.BRACKET_MATCHING, "文件 " + size + " 超过 " + formatSize(BRACKET_MAX_CHARS));
+        } else if (stats.getMaxLineLength() > BRACKET_MAX_LINE_LENGTH) {
+            decision.degrade(Feature.BRACKET_MATCHING, "最长行 " + stats.getMaxLineLength() + " 字符超过 " + BRACKET_MAX_LINE_LENGTH);
+        }
+        return decision;
+    }
+
+    private static String formatSize(long chars) {
+        return String.format("%.1f MB", chars / (double) (1 << 20));
+    }
+
+    /**
+     * 可降级的编辑器功能
+     */
+    public enum Feature {
+        HIGHLIGHTING("语法高亮"),
+        FOLDING("代码折叠"),
+        BRACKET_MATCHING("括号匹配");
+
+        private final String displayName;
+
+        Feature(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * 文本统计，可以分块累加 (加载大文件时边解码边统计)
+     */
+    public static class TextStats {
+        private long length;
+        // 最后一行没有换行符也算一行
+        private int lineCount = 1;
+        private int maxLineLength;
+        private int currentLineLength;
+
+        public void accept(CharSequence text) {
+            int n = text.length();
+            for (int i = 0; i < n; i++) {
+                if (text.charAt(i) == '\n') {
+                    maxLineLength = Math.max(maxLineLength, currentLineLength);
+                    currentLineLength = 0;
+                    lineCount++;
+                } else {
+                    currentLineLength++;
+                }
+            }
+            length += n;
+        }
+
+        /**
+         * 累加一块字符，不改变缓冲区的位置
+         */
+        public void accept(CharBuffer chars) {
+            if (chars.hasArray()) {
+                char[] array = chars.array();
+                int from = chars.arrayOffset() + chars.position();
+                int to = chars.arrayOffset() + chars.limit();
+                for (int i = from; i < to; i++) {
+                    if (array[i] == '\n') {
+                        maxLineLength = Math.max(maxLineLength, currentLineLength);
+                        currentLineLength = 0;
+                        lineCount++;
+                    } else {
+                        currentLineLength++;
+                    }
+                }
+                length += to - from;
+            } else {
+                accept((CharSequence) chars);
+            }
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public int getLineCount() {
+            return lineCount;
+        }
+
+        public int getMaxLineLength() {
+            return Math.max(maxLineLength, currentLineLength);
+        }
+    }
+
+    /**
+     * 降级结果，记录关闭了哪些功能以及原因
+     */
+    public static class Decision {
+        private final List<Feature> degraded = new ArrayList<>();
+        private final List<String> reasons = new ArrayList<>();
+
+        private void degrade(Feature feature, String reason) {
+            degraded.add(feature);
+            reasons.add(reason);
+        }
+
+        public boolean isEnabled(Feature feature) {
+            return !degraded.contains(feature);
+        }
+
+        public boolean isDegraded() {
+            return !degraded.isEmpty();
+        }
+
+        public List<Feature> getDegradedFeatures() {
+            return Collections.unmodifiableList(degraded);
+        }
+
+        /**
+         * @return 给用户看的说明，例如 "已关闭 语法高亮 (最长行 120000 字符超过 20000)"
+         */
+        public String describe() {
+            StringBuilder sb = new StringBuilder("为保持编辑流畅，已关闭 ");
+            for (int i = 0; i < degraded.size(); i++) {
+                if (i > 0) {
+                    sb.append("、");
+                }
+                sb.append(degraded.get(i).getDisplayName()).append(" (").append(reasons.get(i)).append(")");
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.lfs.util;
+
+import org.fife.ui.rsyntaxtextarea.OccurrenceMarker;
+import org.fife.ui.rsyntaxtextarea.RSyntaxDocument;
+import org.fife.ui.rsyntaxtextarea.Token;
+import org.fife.ui.rsyntaxtextarea.TokenMaker;
+import org.fife.ui.rsyntaxtextarea.TokenMakerFactory;
+import org.fife.ui.rsyntaxtextarea.TokenTypes;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import java.util.Set;
+
+/**
+ * 增量着色的 RSyntaxDocument
+ * RSyntaxDocument 切换语法或插入大段文本时，会在 EDT 上对每一行分词，求出行尾的状态 (多行注释、字符串等)，
+ * 20 MB 的文件要卡住数秒。这里在行数较多时跳过这一步，先假定每行都从普通状态开始，可见的行立即按新语法绘制；
+ * 再由 EDT 上的定时器分片从文档开头逐行求出真实状态，每片不超过 SLICE_BUDGET_NANOS，状态变化的行随之重绘
+ */
+public class IncrementalSyntaxDocument extends RSyntaxDocument {
+
+    // 行数不超过该值时直接同步计算
+    private static final int INCREMENTAL_MIN_LINES = 5_000;
+    // 每次定时器触发时的时间预算和间隔，其余时间留给输入和绘制
+    private static final long SLICE_BUDGET_NANOS = 6_000_000L;
+    private static final int TICK_DELAY_MS = 15;
+    private static final int LINES_PER_CLOCK_CHECK = 64;
+
+    private final DeferringTokenMakerFactory factory;
+    private final transient Segment segment = new Segment();
+    private transient Timer timer;
+    // 下一个要计算真实状态的行，之前的行状态已确定；由文档锁保护
+    private int nextLine;
+    // 在后台线程上填充文档时尚未计算的第一行，-1 表示没有；交给文本框后由 resumeHighlighting 在 EDT 上开始
+    private int deferredLine = -1;
+
+    public IncrementalSyntaxDocument(String syntaxStyle) {
+        this(new DeferringTokenMakerFactory(), syntaxStyle);
+    }
+
+    private IncrementalSyntaxDocument(DeferringTokenMakerFactory factory, String syntaxStyle) {
+        super(factory, syntaxStyle);
+        this.factory = factory;
+    }
+
+    /**
+     * @return 是否还有行尾状态尚未计算
+     */
+    public boolean isHighlightingPending() {
+        return timer != null && timer.isRunning();
+    }
+
+    @Override
+    public void setSyntaxStyle(String styleKey) {
+        // 父类构造期间 factory 尚未赋值，文档为空，直接同步计算
+        if (factory == null) {
+            super.setSyntaxStyle(styleKey);
+            return;
+        }
+        boolean incremental = getDefaultRootElement().getElementCount() > INCREMENTAL_MIN_LINES;
+        factory.deferred = incremental;
+        try {
+            super.setSyntaxStyle(styleKey);
+        } finally {
+            factory.deferred = false;
+        }
+        if (incremental) {
+            // 已计算的状态属于旧语法，从头开始
+            stopHighlighting();
+            startOrDefer(0);
+        } else {
+            stopHighlighting();
+        }
+    }
+
+    @Override
+    public void setSyntaxStyle(TokenMaker tokenMaker) {
+        // 直接指定的 TokenMaker 不经过工厂，无法延迟，按父类同步计算
+        stopHighlighting();
+        super.setSyntaxStyle(tokenMaker);
+    }
+
+    @Override
+    protected void fireInsertUpdate(DocumentEvent e) {
+        Element root = getDefaultRootElement();
+        DocumentEvent.ElementChange change = e.getChange(root);
+        int addedLines = change == null ? 0 : change.getChildrenAdded().length - change.getChildrenRemoved().length;
+        boolean incremental = factory != null && addedLines > INCREMENTAL_MIN_LINES;
+        int line = root.getElementIndex(e.getOffset());
+        if (incremental) {
+            factory.deferred = true;
+        }
+        try {
+            super.fireInsertUpdate(e);
+        } finally {
+            if (incremental) {
+                factory.deferred = false;
+            }
+        }
+        if (incremental) {
+            startOrDefer(line);
+        } else if (isHighlightingPending() && line < nextLine) {
+            nextLine = line;
+        }
+    }
+
+    @Override
+    protected void fireRemoveUpdate(DocumentEvent e) {
+        super.fireRemoveUpdate(e);
+        int line = getDefaultRootElement().getElementIndex(e.getOffset());
+        if (isHighlightingPending() && line < nextLine) {
+            nextLine = line;
+        }
+    }
+
+    /**
+     * 文档在后台线程上填充完毕并交给文本框后，在 EDT 上调用，开始计算填充期间推迟的行
+     */
+    public void resumeHighlighting() {
+        if (deferredLine >= 0) {
+            startHighlighting(deferredLine);
+        }
+    }
+
+    /**
+     * 计时器和逐片计算都在 EDT 上进行；后台线程 (如加载线程持有写锁时) 只记下起始行，
+     * 否则 EDT 会在每次插入后等待读锁，计算一个还没有显示的文档
+     */
+    private void startOrDefer(int line) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            startHighlighting(line);
+        } else {
+            deferredLine = deferredLine < 0 ? line : Math.min(deferredLine, line);
+        }
+    }
+
+    /**
+     * 从 line 开始计算行尾状态，已在计算时取两者中较前的位置
+     */
+    private void startHighlighting(int line) {
+        if (deferredLine >= 0) {
+            line = Math.min(line, deferredLine);
+            deferredLine = -1;
+        }
+        if (timer == null) {
+            timer = new Timer(TICK_DELAY_MS, e -> highlightSlice());
+            timer.setCoalesce(true);
+        }
+        nextLine = timer.isRunning() ? Math.min(nextLine, line) : line;
+        timer.start();
+    }
+
+    private void stopHighlighting() {
+        if (timer != null) {
+            timer.stop();
+        }
+    }
+
+    /**
+     * 在时间预算内向后计算行尾状态，并重绘起始状态发生变化的行
+     */
+    private void highlightSlice() {
+        int firstChanged = -1;
+        int lastChanged = -1;
+        int lastLine;
+        readLock();
+        try {
+            Element root = getDefaultRootElement();
+            int lineCount = root.getElementCount();
+            TokenMaker tokenMaker = factory.current;
+            int line = Math.min(nextLine, lineCount);
+            long deadline = System.nanoTime() + SLICE_BUDGET_NANOS;
+            while (line < lineCount && System.nanoTime() < deadline) {
+                int end = Math.min(lineCount, line + LINES_PER_CLOCK_CHECK);
+                for (; line < end; line++) {
+                    Element element = root.getElement(line);
+                    getText(element.getStartOffset(), element.getEndOffset() - 1 - element.getStartOffset(), segment);
+                    int initialType = line == 0 ? TokenTypes.NULL : lastTokensOnLines.get(line - 1);
+                    int type = tokenMaker.getLastTokenTypeOnLine(segment, initialType);
+                    if (type != lastTokensOnLines.get(line)) {
+                        lastTokensOnLines.set(line, type);
+                        if (firstChanged < 0) {
+                            firstChanged = line;
+                        }
+                        lastChanged = line;
+                    }
+                }
+            }
+            nextLine = line;
+            lastLine = line - 1;
+            if (line >= lineCount) {
+                timer.stop();
+            }
+        } catch (BadLocationException e) {
+            // 按元素边界读取不会越界
+            timer.stop();
+            return;
+        } finally {
+            readUnlock();
+        }
+        if (firstChanged >= 0) {
+            repaintLines(firstChanged + 1, lastChanged + 1, lastLine);
+        }
+    }
+
+    private void repaintLines(int firstLine, int lastLine, int finishedLine) {
+        Element root = getDefaultRootElement();
+        int lineCount = root.getElementCount();
+        if (firstLine >= lineCount) {
+            return;
+        }
+        lastLine = Math.min(lastLine, lineCount - 1);
+        // 父类缓存了最近取过的一行分词结果，取一次已确定状态的行来替换可能过期的缓存
+        getTokenListForLine(finishedLine);
+        int start = root.getElement(firstLine).getStartOffset();
+        int end = Math.min(getLength(), root.getElement(lastLine).getEndOffset());
+        fireChangedUpdate(new DefaultDocumentEvent(start, Math.max(0, end - start), DocumentEvent.EventType.CHANGE));
+    }
+
+    /**
+     * 包装默认工厂，deferred 时生成的 TokenMaker 不做行尾状态计算
+     */
+    private static final class DeferringTokenMakerFactory extends TokenMakerFactory {
+        private final TokenMakerFactory delegate = TokenMakerFactory.getDefaultInstance();
+        private volatile boolean deferred;
+        // 当前语法的真实 TokenMaker
+        private volatile TokenMaker current;
+
+        @Override
+        protected TokenMaker getTokenMakerImpl(String key) {
+            current = delegate.getTokenMaker(key);
+            return new DeferredTokenMaker(current, this);
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return delegate.keySet();
+        }
+    }
+
+    /**
+     * 委托给真实 TokenMaker，延迟期间 getLastTokenTypeOnLine 直接返回普通状态
+     */
+    private static final class DeferredTokenMaker implements TokenMaker {
+        private final TokenMaker delegate;
+        private final DeferringTokenMakerFactory factory;
+
+        DeferredTokenMaker(TokenMaker delegate, DeferringTokenMakerFactory factory) {
+            this.delegate = delegate;
+            this.factory = factory;
+        }
+
+        @Override
+        public int getLastTokenTypeOnLine(Segment text, int initialTokenType) {
+            return factory.deferred ? TokenTypes.NULL : delegate.getLastTokenTypeOnLine(text, initialTokenType);
+        }
+
+        @Override
+        public void addNullToken() {
+            delegate.addNullToken();
+        }
+
+        @Override
+        public void addToken(char[] array, int start, int end, int tokenType, int startOffset) {
+            delegate.addToken(array, start, end, tokenType, startOffset);
+        }
+
+        @Override
+        public int getClosestStandardTokenTypeForInternalType(int type) {
+            return delegate.getClosestStandardTokenTypeForInternalType(type);
+        }
+
+        @Override
+        public boolean getCurlyBracesDenoteCodeBlocks(int languageIndex) {
+            return delegate.getCurlyBracesDenoteCodeBlocks(languageIndex);
+        }
+
+        @Override
+        public String[] getLineCommentStartAndEnd(int languageIndex) {
+            return delegate.getLineCommentStartAndEnd(languageIndex);
+        }
+
+        @Override
+        public Action getInsertBreakAction() {
+            return delegate.getInsertBreakAction();
+        }
+
+        @Override
+        public boolean getMarkOccurrencesOfTokenType(int type) {
+            return delegate.getMarkOccurrencesOfTokenType(type);
+        }
+
+        @Override
+        public OccurrenceMarker getOccurrenceMarker() {
+            return delegate.getOccurrenceMarker();
+        }
+
+        @Override
+        public boolean getShouldIndentNextLineAfter(Token token) {
+            return delegate.getShouldIndentNextLineAfter(token);
+        }
+
+        @Override
+        public Token getTokenList(Segment text, int initialTokenType, int startOffset) {
+            return delegate.getTokenList(text, initialTokenType, startOffset);
+        }
+
+        @Override
+        public boolean isIdentifierChar(int languageIndex, char ch) {
+            return delegate.isIdentifierChar(languageIndex, ch);
+        }
+
+        @Override
+        public boolean isMarkupLanguage() {
+            return delegate.isMarkupLanguage();
+        }
+    }
+}
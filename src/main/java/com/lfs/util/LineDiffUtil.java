@@ -0,0 +1,206 @@
+package com.lfs.util;
+
+import com.lfs.domain.dto.ContentPatchRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按行计算文本差异 (Myers O(ND) 算法)
+ * 先去掉公共前后缀，只对中间变化的部分运行 Myers，典型的少量修改几乎是线性时间
+ */
+public class LineDiffUtil {
+
+    private LineDiffUtil() {
+
+    }
+
+    /**
+     * 计算把 base 变成 target 所需的修改
+     *
+     * @param base     基准文本
+     * @param target   目标文本
+     * @param maxEdits 允许的最大增删行数，超过时放弃 (此时全量上传更划算)
+     * @return 按基准行号升序排列、互不重叠的修改列表；修改过多时返回 null
+     */
+    public static List<ContentPatchRequest.Hunk> diff(String base, String target, int maxEdits) {
+        List<String> baseLines = splitLines(base);
+        List<String> targetLines = splitLines(target);
+
+        // 把每一行映射成整数，之后只比较整数
+        Map<String, Integer> ids = new HashMap<>();
+        int[] a = toIds(baseLines, ids);
+        int[] b = toIds(targetLines, ids);
+
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix] == b[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix
+                && a[a.length - 1 - suffix] == b[b.length - 1 - suffix]) {
+            suffix++;
+        }
+        int n = a.length - prefix - suffix;
+        int m = b.length - prefix - suffix;
+
+        boolean[] deleted = new boolean[n];
+        boolean[] inserted = new boolean[m];
+        if (!myers(a, b, prefix, n, m, maxEdits, deleted, inserted)) {
+            return null;
+        }
+
+        // 把逐行的增删合并成连续的 hunk
+        List<ContentPatchRequest.Hunk> hunks = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < n || j < m) {
+            if (i < n && j < m && !deleted[i] && !inserted[j]) {
+                i++;
+                j++;
+                continue;
+            }
+            int hunkStart = i;
+            int insertStart = j;
+            while ((i < n && deleted[i]) || (j < m && inserted[j])) {
+                if (i < n && deleted[i]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            StringBuilder text = new StringBuilder();
+            for (int k = insertStart; k < j; k++) {
+                text.append(targetLines.get(prefix + k));
+            }
+            hunks.add(new ContentPatchRequest.Hunk(prefix + hunkStart, i - hunkStart, text.toString()));
+        }
+        return hunks;
+    }
+
+    /**
+     * 把补丁应用到基准文本上 (与后端的应用逻辑一致，可用于校验)
+     */
+    public static String apply(String base, List<ContentPatchRequest.Hunk> hunks) {
+        List<String> lines = splitLines(base);
+        StringBuilder result = new StringBuilder(base.length());
+        int line = 0;
+        for (ContentPatchRequest.Hunk hunk : hunks) {
+            while (line < hunk.getStart()) {
+                result.append(lines.get(line++));
+            }
+            result.append(hunk.getText());
+            line += hunk.getDeleteCount();
+        }
+        while (line < lines.size()) {
+            result.append(lines.get(line++));
+        }
+        return result.toString();
+    }
+
+    /**
+     * 拆分为行，每行保留自己的换行符，保证拼接后与原文完全一致
+     */
+    private static List<String> splitLines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < length) {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+
+    private static int[] toIds(List<String> lines, Map<String, Integer> ids) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i++) {
+            Integer id = ids.get(lines.get(i));
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines.get(i), id);
+            }
+            result[i] = id;
+        }
+        return result;
+    }
+
+    /**
+     * Myers 最短编辑脚本，结果写入 deleted/inserted 标记数组
+     * 只保存每一步 d 的 [-d, d] 范围，内存为 O(D^2)
+     *
+     * @return 编辑距离不超过 maxEdits 时返回 true
+     */
+    private static boolean myers(int[] a, int[] b, int offset, int n, int m, int maxEdits,
+                                 boolean[] deleted, boolean[] inserted) {
+        int limit = Math.min(n + m, maxEdits);
+        int[] v = new int[2 * limit + 3];
+        int center = limit + 1;
+        List<int[]> trace = new ArrayList<>();
+
+        for (int d = 0; d <= limit; d++) {
+            int[] snapshot = new int[2 * d + 3];
+            System.arraycopy(v, center - d - 1, snapshot, 0, snapshot.length);
+            trace.add(snapshot);
+
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[center + k - 1] < v[center + k + 1])) {
+                    x = v[center + k + 1];
+                } else {
+                    x = v[center + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[offset + x] == b[offset + y]) {
+                    x++;
+                    y++;
+                }
+                v[center + k] = x;
+                if (x >= n && y >= m) {
+                    backtrack(trace, d, n, m, deleted, inserted);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void backtrack(List<int[]> trace, int editCount, int n, int m,
+                                  boolean[] deleted, boolean[] inserted) {
+        int x = n;
+        int y = m;
+        for (int d = editCount; d > 0; d--) {
+            int[] v = trace.get(d);
+            // snapshot 的下标 0 对应 k = -d - 1
+            int base = d + 1;
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && v[base + k - 1] < v[base + k + 1])) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = v[base + prevK];
+            int prevY = prevX - prevK;
+            // 跳过对角线上的相同行
+            while (x > prevX && y > prevY) {
+                x--;
+                y--;
+            }
+            if (prevK == k + 1) {
+                inserted[prevY] = true;
+            } else {
+                deleted[prevX] = true;
+            }
+            x = prevX;
+            y = prevY;
+        }
+    }
+}
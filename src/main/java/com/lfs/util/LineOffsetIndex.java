@@ -0,0 +1,249 @@
+package com.lfs.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 行起始偏移量索引
+ * 按 65536 行分页存储，每页记录首行的 long 基准偏移，页内只存 32 位无符号增量，每行仅占 4 字节；
+ * 出现单页跨度超过 4 GB 的极端情况时整体升级为 long 存储。追加时只在换页时分配内存。
+ * 索引可以序列化，并直接以内存映射的方式重新打开，映射部分之后仍可继续追加。
+ * 只允许一个线程写入，其它线程可以同时读取已经写入的部分 (size 之前的行)
+ */
+public class LineOffsetIndex {
+
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final long MAX_DELTA = 0xFFFFFFFFL;
+
+    // 序列化格式中的存储模式
+    private static final int MODE_INT_DELTA = 0;
+    private static final int MODE_LONG = 1;
+
+    private volatile long[] pageBases = new long[16];
+    private volatile int[][] intPages = new int[16][];
+    // 升级为 long 存储后不为 null
+    private volatile long[][] longPages;
+    private volatile int size;
+
+    // 内存映射的只读前缀，行号小于 mappedSize 的行从这里读取
+    private ByteBuffer mapped;
+    private int mappedSize;
+    private int mappedMode;
+    private int mappedBasesPosition;
+    private int mappedDataPosition;
+
+    /**
+     * 以序列化数据 (通常是内存映射的文件) 为只读前缀创建索引，不复制数据
+     * @param buffer 从当前位置开始是 {@link #writeTo(DataOutputStream)} 写出的数据
+     * @return 索引
+     * @throws IOException 数据格式不正确
+     */
+    public static LineOffsetIndex map(ByteBuffer buffer) throws IOException {
+        int position = buffer.position();
+        int mode = buffer.getInt(position);
+        int count = buffer.getInt(position + 4);
+        int pageCount = buffer.getInt(position + 8);
+        int basesPosition = position + 12;
+        int dataPosition = mode == MODE_INT_DELTA ? basesPosition + pageCount * 8 : basesPosition;
+        long expectedEnd = dataPosition + (long) count * (mode == MODE_INT_DELTA ? 4 : 8);
+        if ((mode != MODE_INT_DELTA && mode != MODE_LONG) || count < 0
+                || pageCount != (count + PAGE_SIZE - 1) / PAGE_SIZE || expectedEnd > buffer.limit()) {
+            throw new IOException("索引数据已损坏");
+        }
+        LineOffsetIndex index = new LineOffsetIndex();
+        index.mapped = buffer;
+        index.mappedSize = count;
+        index.mappedMode = mode;
+        index.mappedBasesPosition = basesPosition;
+        index.mappedDataPosition = dataPosition;
+        index.size = count;
+        return index;
+    }
+
+    /**
+     * 追加一行的起始偏移，偏移必须单调不减 (只能由写入线程调用)
+     * @param offset 行起始偏移
+     */
+    public void add(long offset) {
+        int index = size;
+        int page = index >>> PAGE_SHIFT;
+        int slot = index & PAGE_MASK;
+        if (longPages != null) {
+            ensureLongPage(page);
+            longPages[page][slot] = offset;
+        } else {
+            // 紧接在映射前缀之后的页不是从第 0 个槽开始，以第一个追加的偏移为基准
+            if (slot == 0 || page >= intPages.length || intPages[page] == null) {
+                ensureIntPage(page, offset);
+            }
+            long delta = offset - pageBases[page];
+            if (delta > MAX_DELTA) {
+                upgradeToLong();
+                ensureLongPage(page);
+                longPages[page][slot] = offset;
+            } else {
+                intPages[page][slot] = (int) delta;
+            }
+        }
+        // volatile 写，之前写入的数据对读取线程可见
+        size = index + 1;
+    }
+
+    /**
+     * 依次追加另一个索引中的全部偏移 (只能由写入线程调用)
+     * @param other 偏移不小于本索引末尾的索引
+     */
+    public void addAll(LineOffsetIndex other) {
+        int count = other.size();
+        for (int line = 0; line < count; line++) {
+            add(other.get(line));
+        }
+    }
+
+    /**
+     * 获取某一行的起始偏移
+     * @param line 行号 (从 0 开始)
+     * @return 起始偏移
+     */
+    public long get(int line) {
+        if (line < 0 || line >= size) {
+            throw new IndexOutOfBoundsException("line " + line + ", size " + size);
+        }
+        if (line < mappedSize) {
+            return getMapped(line);
+        }
+        int page = line >>> PAGE_SHIFT;
+        int slot = line & PAGE_MASK;
+        long[][] upgraded = longPages;
+        if (upgraded != null) {
+            return upgraded[page][slot];
+        }
+        return pageBases[page] + (intPages[page][slot] & MAX_DELTA);
+    }
+
+    /**
+     * 查找包含某个字节位置的行
+     * @param offset 字节位置
+     * @return 起始偏移不大于 offset 的最后一行，索引为空时返回 -1
+     */
+    public int lineOf(long offset) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid) <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 序列化为紧凑的二进制格式，可由 {@link #map(ByteBuffer)} 直接映射读取
+     * @param out 输出流
+     * @throws IOException 写入失败
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        int count = size;
+        int pageCount = (count + PAGE_SIZE - 1) / PAGE_SIZE;
+        // 偏移单调递增，每页的最大增量就是最后一行与第一行之差
+        int mode = MODE_INT_DELTA;
+        for (int page = 0; page < pageCount && mode == MODE_INT_DELTA; page++) {
+            int first = page << PAGE_SHIFT;
+            int last = Math.min(count, first + PAGE_SIZE) - 1;
+            if (get(last) - get(first) > MAX_DELTA) {
+                mode = MODE_LONG;
+            }
+        }
+        out.writeInt(mode);
+        out.writeInt(count);
+        out.writeInt(pageCount);
+        if (mode == MODE_INT_DELTA) {
+            for (int page = 0; page < pageCount; page++) {
+                out.writeLong(get(page << PAGE_SHIFT));
+            }
+            long base = 0;
+            for (int line = 0; line < count; line++) {
+                if ((line & PAGE_MASK) == 0) {
+                    base = get(line);
+                }
+                out.writeInt((int) (get(line) - base));
+            }
+        } else {
+            for (int line = 0; line < count; line++) {
+                out.writeLong(get(line));
+            }
+        }
+    }
+
+    private long getMapped(int line) {
+        if (mappedMode == MODE_LONG) {
+            return mapped.getLong(mappedDataPosition + line * 8);
+        }
+        long base = mapped.getLong(mappedBasesPosition + (line >>> PAGE_SHIFT) * 8);
+        return base + (mapped.getInt(mappedDataPosition + line * 4) & MAX_DELTA);
+    }
+
+    private void ensureIntPage(int page, long base) {
+        if (page >= intPages.length) {
+            int capacity = intPages.length;
+            while (capacity <= page) {
+                capacity *= 2;
+            }
+            long[] newBases = new long[capacity];
+            System.arraycopy(pageBases, 0, newBases, 0, pageBases.length);
+            int[][] newPages = new int[capacity][];
+            System.arraycopy(intPages, 0, newPages, 0, intPages.length);
+            pageBases = newBases;
+            intPages = newPages;
+        }
+        pageBases[page] = base;
+        intPages[page] = new int[PAGE_SIZE];
+    }
+
+    private void ensureLongPage(int page) {
+        if (page >= longPages.length) {
+            int capacity = longPages.length;
+            while (capacity <= page) {
+                capacity *= 2;
+            }
+            long[][] newPages = new long[capacity][];
+            System.arraycopy(longPages, 0, newPages, 0, longPages.length);
+            longPages = newPages;
+        }
+        if (longPages[page] == null) {
+            longPages[page] = new long[PAGE_SIZE];
+        }
+    }
+
+    /**
+     * 把内存中的数据复制到 long 分页 (映射前缀保持不变)。
+     * 旧的 int 分页保持不变，正在读取的线程仍能得到正确结果
+     */
+    private void upgradeToLong() {
+        int count = size;
+        int pageCount = Math.max(16, intPages.length);
+        long[][] pages = new long[pageCount][];
+        for (int line = mappedSize; line < count; line++) {
+            int page = line >>> PAGE_SHIFT;
+            if (pages[page] == null) {
+                pages[page] = new long[PAGE_SIZE];
+            }
+            pages[page][line & PAGE_MASK] = pageBases[page] + (intPages[page][line & PAGE_MASK] & MAX_DELTA);
+        }
+        longPages = pages;
+    }
+}
@@ -0,0 +1,208 @@
+package com.lfs.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按行组织的 piece table，记录在只读原文件之上的编辑
+ * 文档由若干片段按顺序拼接而成，每个片段引用原文件的一段连续行，或追加缓冲区中的一段行。
+ * 原文件从不修改，新输入的行只追加到追加缓冲区，编辑只拆分和重排片段，因此编辑的开销与文件大小无关。
+ * 只能在单个线程 (EDT) 上使用
+ */
+public class LinePieceTable {
+
+    private final List<Piece> pieces = new ArrayList<>();
+    // 追加缓冲区，只增不减，被删除的行也保留
+    private final List<String> addBuffer = new ArrayList<>();
+    // pieceStarts[i] 是第 i 个片段首行在文档中的行号，编辑后延迟重建
+    private int[] pieceStarts;
+    private int size;
+    private boolean modified;
+
+    /**
+     * @param originalLines 原文件的行数
+     */
+    public LinePieceTable(int originalLines) {
+        if (originalLines > 0) {
+            pieces.add(new Piece(true, 0, originalLines));
+        }
+        size = originalLines;
+    }
+
+    /**
+     * @return 当前文档的行数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 自创建以来是否有过编辑
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * @param line 文档中的行号
+     * @return 该行在原文件中的行号；该行来自追加缓冲区时返回 -1
+     */
+    public int originalLine(int line) {
+        int index = pieceOf(line);
+        Piece piece = pieces.get(index);
+        return piece.original ? piece.start + line - pieceStarts[index] : -1;
+    }
+
+    /**
+     * @param line 文档中的行号
+     * @return 该行的新文本；该行来自原文件时返回 null，需由调用方从原文件读取
+     */
+    public String addedLine(int line) {
+        int index = pieceOf(line);
+        Piece piece = pieces.get(index);
+        return piece.original ? null : addBuffer.get(piece.start + line - pieceStarts[index]);
+    }
+
+    /**
+     * 替换一行的内容
+     */
+    public void replace(int line, String text) {
+        checkIndex(line, size);
+        delete(line);
+        insert(line, text);
+    }
+
+    /**
+     * 在指定位置插入一行，原来的该行及之后的行下移
+     * @param line 插入位置，等于 size() 时追加到末尾
+     */
+    public void insert(int line, String text) {
+        checkIndex(line, size + 1);
+        addBuffer.add(text);
+        Piece added = new Piece(false, addBuffer.size() - 1, 1);
+        int index = splitAt(line);
+        // 紧接在上一个追加片段之后输入的行合并到同一片段，连续插入不会让片段数增长
+        if (index > 0) {
+            Piece previous = pieces.get(index - 1);
+            if (!previous.original && previous.start + previous.count == added.start) {
+                pieces.set(index - 1, new Piece(false, previous.start, previous.count + 1));
+                changed(1);
+                return;
+            }
+        }
+        pieces.add(index, added);
+        changed(1);
+    }
+
+    /**
+     * 删除一行
+     */
+    public void delete(int line) {
+        checkIndex(line, size);
+        int index = splitAt(line);
+        Piece piece = pieces.get(index);
+        if (piece.count == 1) {
+            pieces.remove(index);
+        } else {
+            pieces.set(index, new Piece(piece.original, piece.start + 1, piece.count - 1));
+        }
+        changed(-1);
+    }
+
+    /**
+     * 按顺序返回当前的全部片段，用于保存
+     */
+    public List<Piece> getPieces() {
+        return new ArrayList<>(pieces);
+    }
+
+    /**
+     * @param piece 追加缓冲区中的片段
+     * @param i     片段内的第几行
+     * @return 该行文本
+     */
+    public String addedText(Piece piece, int i) {
+        return addBuffer.get(piece.start + i);
+    }
+
+    /**
+     * 在 line 之前切开片段，返回从 line 开始的片段下标 (line == size() 时返回片段数)
+     */
+    private int splitAt(int line) {
+        if (line == size) {
+            return pieces.size();
+        }
+        int index = pieceOf(line);
+        int offset = line - pieceStarts[index];
+        if (offset == 0) {
+            return index;
+        }
+        Piece piece = pieces.get(index);
+        pieces.set(index, new Piece(piece.original, piece.start, offset));
+        pieces.add(index + 1, new Piece(piece.original, piece.start + offset, piece.count - offset));
+        pieceStarts = null;
+        return index + 1;
+    }
+
+    private int pieceOf(int line) {
+        checkIndex(line, size);
+        if (pieceStarts == null) {
+            pieceStarts = new int[pieces.size()];
+            int start = 0;
+            for (int i = 0; i < pieces.size(); i++) {
+                pieceStarts[i] = start;
+                start += pieces.get(i).count;
+            }
+        }
+        int low = 0;
+        int high = pieceStarts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (pieceStarts[mid] <= line) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private void changed(int delta) {
+        size += delta;
+        pieceStarts = null;
+        modified = true;
+    }
+
+    private static void checkIndex(int line, int bound) {
+        if (line < 0 || line >= bound) {
+            throw new IndexOutOfBoundsException("line " + line + ", size " + bound);
+        }
+    }
+
+    /**
+     * 片段：原文件或追加缓冲区中从 start 开始的 count 行
+     */
+    public static class Piece {
+        private final boolean original;
+        private final int start;
+        private final int count;
+
+        Piece(boolean original, int start, int count) {
+            this.original = original;
+            this.start = start;
+            this.count = count;
+        }
+
+        public boolean isOriginal() {
+            return original;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.lfs.util;
+
+import javax.swing.text.Segment;
+import java.util.Arrays;
+
+/**
+ * 普通文本查找 (Boyer-Moore-Horspool)
+ * 从右向左比较查找内容，不匹配时按窗口最后一个字符查跳转表，一次最多跳过整个查找内容的长度，
+ * 查找内容越长越快。跳转表按字符低 8 位索引，冲突的字符取较小的跳转距离，结果仍然正确。
+ * 忽略大小写时逐字符按 toUpperCase 再 toLowerCase 折叠后比较。实例不可变，可以在多个线程上共用
+ */
+public final class LiteralSearcher {
+
+    private static final int TABLE_SIZE = 256;
+
+    // 折叠后的查找内容
+    private final char[] needle;
+    private final boolean ignoreCase;
+    // 窗口最后一个字符 (折叠后) 对应的跳转距离
+    private final int[] shift = new int[TABLE_SIZE];
+
+    /**
+     * @param literal    查找内容，不能为空
+     * @param ignoreCase 是否忽略大小写
+     */
+    public LiteralSearcher(String literal, boolean ignoreCase) {
+        if (literal.isEmpty()) {
+            throw new IllegalArgumentException("查找内容不能为空");
+        }
+        this.ignoreCase = ignoreCase;
+        this.needle = new char[literal.length()];
+        for (int i = 0; i < needle.length; i++) {
+            needle[i] = fold(literal.charAt(i));
+        }
+        int last = needle.length - 1;
+        Arrays.fill(shift, needle.length);
+        for (int i = 0; i < last; i++) {
+            int slot = needle[i] & (TABLE_SIZE - 1);
+            shift[slot] = Math.min(shift[slot], last - i);
+        }
+    }
+
+    /**
+     * @return 查找内容的长度
+     */
+    public int length() {
+        return needle.length;
+    }
+
+    /**
+     * 在 text 中查找起点位于 [from, to) 的第一个匹配，匹配可以越过 to 延伸到 text 末尾
+     * @return 匹配起点，没有时返回 -1
+     */
+    public int indexOf(CharSequence text, int from, int to) {
+        if (text instanceof Segment) {
+            // Segment 直接访问底层数组，省去 charAt 的调用和边界检查
+            Segment segment = (Segment) text;
+            int found = indexOf(segment.array, segment.offset + from, segment.offset + to,
+                    segment.offset + segment.count);
+            return found < 0 ? -1 : found - segment.offset;
+        }
+        int last = needle.length - 1;
+        int limit = Math.min(to, text.length() - last);
+        int position = Math.max(0, from);
+        while (position < limit) {
+            char c = fold(text.charAt(position + last));
+            if (c == needle[last]) {
+                int i = last - 1;
+                while (i >= 0 && fold(text.charAt(position + i)) == needle[i]) {
+                    i--;
+                }
+                if (i < 0) {
+                    return position;
+                }
+            }
+            position += shift[c & (TABLE_SIZE - 1)];
+        }
+        return -1;
+    }
+
+    /**
+     * 在 array[0, end) 中查找起点位于 [from, to) 的第一个匹配
+     * @return 匹配起点 (数组下标)，没有时返回 -1
+     */
+    public int indexOf(char[] array, int from, int to, int end) {
+        int last = needle.length - 1;
+        int limit = Math.min(to, end - last);
+        int position = Math.max(0, from);
+        char tail = needle[last];
+        if (!ignoreCase) {
+            while (position < limit) {
+                char c = array[position + last];
+                if (c == tail) {
+                    int i = last - 1;
+                    while (i >= 0 && array[position + i] == needle[i]) {
+                        i--;
+                    }
+                    if (i < 0) {
+                        return position;
+                    }
+                }
+                position += shift[c & (TABLE_SIZE - 1)];
+            }
+            return -1;
+        }
+        while (position < limit) {
+            char c = fold(array[position + last]);
+            if (c == tail) {
+                int i = last - 1;
+                while (i >= 0 && fold(array[position + i]) == needle[i]) {
+                    i--;
+                }
+                if (i < 0) {
+                    return position;
+                }
+            }
+            position += shift[c & (TABLE_SIZE - 1)];
+        }
+        return -1;
+    }
+
+    private char fold(char c) {
+        if (!ignoreCase) {
+            return c;
+        }
+        if (c < 0x80) {
+            // ASCII 快速路径
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
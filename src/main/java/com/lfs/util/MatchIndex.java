@@ -0,0 +1,186 @@
+package com.lfs.util;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import java.util.Arrays;
+
+/**
+ * 查找结果索引
+ * 按位置顺序保存全部匹配的起止偏移 (两个 int 数组)，匹配互不重叠，起点和终点都单调递增，
+ * 定位下一个、上一个、第几个匹配以及可见区域内的匹配都是二分查找。
+ * 文档被编辑后只在编辑所在的行 (前后各多一行) 重新查找，其余匹配平移；
+ * 跨越多行且不经过编辑区域附近的正则匹配可能与完整查找的结果不同。空匹配不计入索引。非线程安全
+ */
+public class MatchIndex {
+
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * 追加匹配，必须按位置顺序调用
+     */
+    public void add(int start, int end) {
+        if (start == end) {
+            return;
+        }
+        ensureCapacity(size + 1);
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    /**
+     * @return 第一个起点不早于 offset 的匹配序号，没有时返回 size()
+     */
+    public int firstStartingAtOrAfter(int offset) {
+        return lowerBound(starts, offset);
+    }
+
+    /**
+     * @return 最后一个起点早于 offset 的匹配序号，没有时返回 -1
+     */
+    public int lastStartingBefore(int offset) {
+        return lowerBound(starts, offset) - 1;
+    }
+
+    /**
+     * @return 第一个终点晚于 offset 的匹配序号 (即与 offset 之后的区域相交的第一个匹配)，没有时返回 size()
+     */
+    public int firstEndingAfter(int offset) {
+        return lowerBound(ends, offset + 1);
+    }
+
+    /**
+     * @return 起点为 start 的匹配序号，没有时返回 -1
+     */
+    public int indexOf(int start) {
+        int index = lowerBound(starts, start);
+        return index < size && starts[index] == start ? index : -1;
+    }
+
+    /**
+     * 文档插入或删除文本后更新索引，需在 DocumentListener 中 (文档已修改、仍持有锁) 调用
+     * @param document 已修改的文档
+     * @param searcher 当前查找内容的查找器
+     * @param event    插入或删除事件
+     */
+    public void update(Document document, DocumentSearcher searcher, DocumentEvent event) throws BadLocationException {
+        int offset = event.getOffset();
+        int inserted = event.getType() == DocumentEvent.EventType.INSERT ? event.getLength() : 0;
+        int removed = event.getType() == DocumentEvent.EventType.REMOVE ? event.getLength() : 0;
+        int delta = inserted - removed;
+
+        // 新文档中需要重新查找的区域：编辑所在的行，前后各多一行
+        Element root = document.getDefaultRootElement();
+        int firstLine = Math.max(0, root.getElementIndex(offset) - 1);
+        int lastLine = Math.min(root.getElementCount() - 1, root.getElementIndex(offset + inserted) + 1);
+        int from = root.getElement(firstLine).getStartOffset();
+        int to = Math.min(document.getLength(), root.getElement(lastLine).getEndOffset());
+
+        // 旧索引中与该区域相交的匹配 [first, last) 作废，区域扩大到完整覆盖它们
+        int first = lowerBound(ends, from + 1);
+        if (first < size && starts[first] < from) {
+            from = starts[first];
+        }
+        int last = lowerBound(starts, toOld(to, offset, removed, delta));
+        if (last > first) {
+            to = Math.max(to, toNew(ends[last - 1], offset, removed, delta));
+        }
+
+        MatchIndex found = new MatchIndex();
+        int scanFrom = from;
+        int scanTo = to;
+        while (true) {
+            searcher.findRange(document, scanFrom, scanTo, (start, end) -> {
+                found.add(start, end);
+                return true;
+            });
+            // 新匹配越过区域末尾时，与之重叠的后续匹配也要重新查找
+            int reach = found.size == 0 ? scanTo : Math.max(scanTo, found.ends[found.size - 1]);
+            int extendTo = scanTo;
+            while (last < size && starts[last] + delta < reach) {
+                extendTo = Math.max(extendTo, ends[last] + delta);
+                last++;
+            }
+            if (extendTo == scanTo) {
+                break;
+            }
+            scanFrom = reach;
+            scanTo = extendTo;
+        }
+
+        // 用新匹配替换 [first, last)，其后的匹配平移 delta
+        int newSize = size - (last - first) + found.size;
+        ensureCapacity(newSize);
+        int tail = size - last;
+        System.arraycopy(starts, last, starts, first + found.size, tail);
+        System.arraycopy(ends, last, ends, first + found.size, tail);
+        System.arraycopy(found.starts, 0, starts, first, found.size);
+        System.arraycopy(found.ends, 0, ends, first, found.size);
+        if (delta != 0) {
+            for (int i = first + found.size; i < newSize; i++) {
+                starts[i] += delta;
+                ends[i] += delta;
+            }
+        }
+        size = newSize;
+    }
+
+    /**
+     * 新文档中的偏移换算到编辑前
+     */
+    private static int toOld(int offset, int editOffset, int removed, int delta) {
+        return offset <= editOffset ? offset : Math.max(editOffset + removed, offset - delta);
+    }
+
+    /**
+     * 编辑前的偏移换算到新文档
+     */
+    private static int toNew(int offset, int editOffset, int removed, int delta) {
+        if (offset <= editOffset) {
+            return offset;
+        }
+        return offset < editOffset + removed ? editOffset : offset + delta;
+    }
+
+    private int lowerBound(int[] values, int key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > starts.length) {
+            int newLength = Math.max(capacity, starts.length * 2);
+            starts = Arrays.copyOf(starts, newLength);
+            ends = Arrays.copyOf(ends, newLength);
+        }
+    }
+}